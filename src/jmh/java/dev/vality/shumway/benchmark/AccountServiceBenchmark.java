@@ -0,0 +1,50 @@
+package dev.vality.shumway.benchmark;
+
+import dev.vality.shumway.domain.AccountState;
+import dev.vality.shumway.domain.AccountStripes;
+import dev.vality.shumway.domain.PostingOperation;
+import dev.vality.shumway.service.AccountService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Account log computation of hold and commit without database round trips.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class AccountServiceBenchmark {
+    private AccountService accountService;
+
+    @Setup
+    public void setUp() {
+        accountService = new AccountService(new NoopAccountDao(), null);
+    }
+
+    @Benchmark
+    public Map<Long, AccountState> firstHold(PostingPlanFixture fixture) {
+        return accountService.holdAccounts(PostingPlanFixture.PLAN_ID, fixture.batch, fixture.postingLogs,
+                Collections.emptyList(), fixture.statefulAccounts, AccountStripes.EMPTY);
+    }
+
+    @Benchmark
+    public Map<Long, AccountState> nextHold(PostingPlanFixture fixture) {
+        return accountService.holdAccounts(PostingPlanFixture.PLAN_ID, fixture.batch, fixture.postingLogs,
+                fixture.postingLogs, fixture.statefulAccounts, AccountStripes.EMPTY);
+    }
+
+    @Benchmark
+    public Map<Long, AccountState> commit(PostingPlanFixture fixture) {
+        return accountService.commitOrRollback(PostingOperation.COMMIT, PostingPlanFixture.PLAN_ID,
+                fixture.postingLogs, fixture.statefulAccounts, AccountStripes.EMPTY);
+    }
+}
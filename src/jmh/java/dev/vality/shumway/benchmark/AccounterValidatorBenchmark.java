@@ -0,0 +1,34 @@
+package dev.vality.shumway.benchmark;
+
+import dev.vality.shumway.handler.AccounterValidator;
+import org.apache.thrift.TException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validation of a received plan against saved postings and accounts, on the happy path.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class AccounterValidatorBenchmark {
+
+    @Benchmark
+    public void validateStaticPostings(PostingPlanFixture fixture) throws TException {
+        AccounterValidator.validateStaticPostings(fixture.plan);
+    }
+
+    @Benchmark
+    public void validatePlanBatches(PostingPlanFixture fixture) throws TException {
+        AccounterValidator.validatePlanBatches(fixture.plan, fixture.savedPostingLogs, true);
+    }
+
+    @Benchmark
+    public void validateAccounts(PostingPlanFixture fixture) throws TException {
+        AccounterValidator.validateAccounts(List.of(fixture.batch), fixture.statefulAccounts);
+    }
+}
@@ -0,0 +1,93 @@
+package dev.vality.shumway.benchmark;
+
+import dev.vality.shumway.dao.AccountDao;
+import dev.vality.shumway.dao.DaoException;
+import dev.vality.shumway.domain.Account;
+import dev.vality.shumway.domain.AccountLog;
+import dev.vality.shumway.domain.AccountState;
+import dev.vality.shumway.domain.StatefulAccount;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps account service benchmarks off the database: accounts get sequential ids, written logs are dropped.
+ */
+public class NoopAccountDao implements AccountDao {
+    private final AtomicLong lastId = new AtomicLong();
+
+    @Override
+    public long add(Account prototype) throws DaoException {
+        return lastId.incrementAndGet();
+    }
+
+    @Override
+    public void addLogs(List<AccountLog> accountLogs) throws DaoException {
+    }
+
+    @Override
+    public void addLogs(List<AccountLog> accountLogs, Map<Long, Long> expectedVersions) throws DaoException {
+        addLogs(accountLogs);
+    }
+
+    @Override
+    public Account get(long id) throws DaoException {
+        return null;
+    }
+
+    @Override
+    public List<Account> get(Collection<Long> ids) throws DaoException {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public Map<Long, StatefulAccount> getStatefulUpTo(Collection<Long> ids, String planId, long batchId)
+            throws DaoException {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public Map<Long, StatefulAccount> getStateful(Collection<Long> ids) throws DaoException {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public Map<Long, StatefulAccount> getStatefulExclusive(Collection<Long> ids) throws DaoException {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public Map<Long, AccountState> getAccountStates(Collection<Long> accountIds) throws DaoException {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public Map<Long, AccountState> getExclusiveAccountStates(Collection<Long> accountIds) throws DaoException {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public Map<Long, AccountState> getAccountStatesUpTo(Collection<Long> accountIds, String planId, long batchId)
+            throws DaoException {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public Map<Long, List<Long>> getStripes(Collection<Long> ids) throws DaoException {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public Set<Long> getPlanAccountIds(String planId, Collection<Long> ids) throws DaoException {
+        return Collections.emptySet();
+    }
+
+    @Override
+    public int compactLogs(int logLimit, long minAgeSec) throws DaoException {
+        return 0;
+    }
+}
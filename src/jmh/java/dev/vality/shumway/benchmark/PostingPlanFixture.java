@@ -0,0 +1,74 @@
+package dev.vality.shumway.benchmark;
+
+import dev.vality.damsel.accounter.Posting;
+import dev.vality.damsel.accounter.PostingBatch;
+import dev.vality.damsel.accounter.PostingPlan;
+import dev.vality.shumway.domain.AccountState;
+import dev.vality.shumway.domain.PostingLog;
+import dev.vality.shumway.domain.PostingOperation;
+import dev.vality.shumway.domain.PostingPlanLog;
+import dev.vality.shumway.domain.StatefulAccount;
+import dev.vality.shumway.handler.ProtocolConverter;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Single batch plan of {@link #postings} postings between {@link #accounts} accounts,
+ * in protocol and domain representations.
+ */
+@State(Scope.Benchmark)
+public class PostingPlanFixture {
+    public static final String PLAN_ID = "benchmark_plan";
+    public static final long BATCH_ID = 1;
+    public static final String CURRENCY = "RUB";
+
+    @Param({"1", "100", "1000", "10000"})
+    public int postings;
+
+    @Param({"100"})
+    public int accounts;
+
+    public PostingPlan plan;
+    public PostingBatch batch;
+    public PostingPlanLog planLog;
+    public List<PostingLog> postingLogs;
+    public Map<Long, List<PostingLog>> savedPostingLogs;
+    public Map<Long, StatefulAccount> statefulAccounts;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        Instant now = Instant.now();
+        List<Posting> protocolPostings = new ArrayList<>(postings);
+        for (int i = 0; i < postings; i++) {
+            long fromId = random.nextInt(accounts) + 1;
+            long toId = fromId % accounts + 1;
+            protocolPostings.add(new Posting(fromId, toId, random.nextInt(100_000) + 1, CURRENCY, "posting " + i));
+        }
+        batch = new PostingBatch(BATCH_ID, protocolPostings);
+        plan = new PostingPlan(PLAN_ID, List.of(batch));
+        planLog = new PostingPlanLog(PLAN_ID, now, PostingOperation.HOLD, BATCH_ID);
+
+        postingLogs = new ArrayList<>(postings);
+        for (Posting posting : protocolPostings) {
+            postingLogs.add(ProtocolConverter.convertToDomainPosting(posting, batch, planLog));
+        }
+        savedPostingLogs = Map.of(BATCH_ID, postingLogs);
+
+        statefulAccounts = new HashMap<>(accounts * 2);
+        for (long id = 1; id <= accounts; id++) {
+            statefulAccounts.put(id, new StatefulAccount(id, now, CURRENCY, "account " + id,
+                    new AccountState(1_000_000, 0, 1_000_000)));
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package dev.vality.shumway.benchmark;
+
+import dev.vality.damsel.accounter.Account;
+import dev.vality.damsel.accounter.Posting;
+import dev.vality.damsel.accounter.PostingBatch;
+import dev.vality.shumway.domain.PostingLog;
+import dev.vality.shumway.domain.StatefulAccount;
+import dev.vality.shumway.handler.ProtocolConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Protocol to domain conversions of postings and domain to protocol conversions of results.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ProtocolConverterBenchmark {
+
+    @Benchmark
+    public List<PostingLog> toDomainPostings(PostingPlanFixture fixture) {
+        List<PostingLog> postingLogs = new ArrayList<>(fixture.batch.getPostingsSize());
+        for (Posting posting : fixture.batch.getPostings()) {
+            postingLogs.add(ProtocolConverter.convertToDomainPosting(posting, fixture.batch, fixture.planLog));
+        }
+        return postingLogs;
+    }
+
+    @Benchmark
+    public PostingBatch fromDomainBatch(PostingPlanFixture fixture) {
+        return ProtocolConverter.convertFromDomainToBatch(PostingPlanFixture.BATCH_ID, fixture.postingLogs);
+    }
+
+    @Benchmark
+    public void fromDomainAccounts(PostingPlanFixture fixture, Blackhole blackhole) {
+        for (StatefulAccount account : fixture.statefulAccounts.values()) {
+            Account protocolAccount = ProtocolConverter.convertFromDomainAccount(account);
+            blackhole.consume(protocolAccount);
+        }
+    }
+}
@@ -1,11 +1,18 @@
 package dev.vality.shumway.config;
 
 import dev.vality.shumway.dao.AccountDao;
+import dev.vality.shumway.dao.AccountLockMode;
 import dev.vality.shumway.dao.AccountReplicaDao;
+import dev.vality.shumway.dao.PostingOperationDao;
 import dev.vality.shumway.dao.PostingPlanDao;
 import dev.vality.shumway.handler.AccounterHandler;
+import dev.vality.shumway.handler.FinalizedPlanCache;
+import dev.vality.shumway.handler.IdempotencyCache;
+import dev.vality.shumway.handler.PostingMetrics;
+import dev.vality.shumway.handler.TransactionRetrier;
 import dev.vality.shumway.service.AccountService;
 import dev.vality.shumway.service.PostingPlanService;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -13,12 +20,20 @@ import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Duration;
+
 @Configuration
 public class AppConfiguration {
 
     @Value("${db.jdbc.tr_timeout}")
     private int transactionTimeoutSec;
 
+    @Value("${account.striping.enabled:false}")
+    private boolean stripingEnabled;
+
+    @Value("${posting.server-side.enabled:false}")
+    private boolean serverSideEnabled;
+
     @Bean
     public TransactionTemplate transactionTemplate(PlatformTransactionManager transactionManager) {
         TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
@@ -27,22 +42,68 @@ public class AppConfiguration {
         return transactionTemplate;
     }
 
+    @Bean
+    public TransactionRetrier transactionRetrier(
+            @Value("${db.jdbc.retry.max_attempts}") int maxAttempts,
+            @Value("${db.jdbc.retry.base_backoff_ms}") long baseBackoffMs,
+            @Value("${db.jdbc.retry.max_backoff_ms}") long maxBackoffMs,
+            MeterRegistry meterRegistry
+    ) {
+        return new TransactionRetrier(maxAttempts, baseBackoffMs, maxBackoffMs, meterRegistry);
+    }
+
+    @Bean
+    public PostingMetrics postingMetrics(MeterRegistry meterRegistry) {
+        return new PostingMetrics(meterRegistry);
+    }
+
+    @Bean
+    public IdempotencyCache idempotencyCache(
+            @Value("${posting.idempotency-cache.enabled:false}") boolean enabled,
+            @Value("${posting.idempotency-cache.max_plans}") long maxPlans,
+            @Value("${posting.idempotency-cache.expire_after_write_sec}") long expireAfterWriteSec,
+            MeterRegistry meterRegistry
+    ) {
+        return enabled
+                ? new IdempotencyCache(maxPlans, Duration.ofSeconds(expireAfterWriteSec), meterRegistry)
+                : IdempotencyCache.disabled();
+    }
+
+    @Bean
+    public FinalizedPlanCache finalizedPlanCache(
+            @Value("${posting.plan-cache.enabled:false}") boolean enabled,
+            @Value("${posting.plan-cache.max_size_mb}") long maxSizeMb,
+            MeterRegistry meterRegistry
+    ) {
+        return enabled ? new FinalizedPlanCache(maxSizeMb * 1024 * 1024, meterRegistry) : FinalizedPlanCache.disabled();
+    }
+
     @Bean
     public AccountService accountService(AccountDao accountDao, AccountReplicaDao replicaDao) {
-        return new AccountService(accountDao, replicaDao);
+        return new AccountService(accountDao, replicaDao, stripingEnabled);
     }
 
     @Bean
-    PostingPlanService postingPlanService(PostingPlanDao postingPlanDao) {
-        return new PostingPlanService(postingPlanDao);
+    PostingPlanService postingPlanService(PostingPlanDao postingPlanDao, PostingOperationDao postingOperationDao) {
+        return new PostingPlanService(postingPlanDao, postingOperationDao);
     }
 
     @Bean
     AccounterHandler accounterHandler(
             AccountService accountService,
             PostingPlanService postingPlanService,
-            TransactionTemplate transactionTemplate
+            TransactionTemplate transactionTemplate,
+            TransactionRetrier transactionRetrier,
+            PostingMetrics postingMetrics,
+            IdempotencyCache idempotencyCache,
+            FinalizedPlanCache finalizedPlanCache,
+            @Value("${account.locking.mode:row}") AccountLockMode lockMode
     ) {
-        return new AccounterHandler(accountService, postingPlanService, transactionTemplate);
+        if (serverSideEnabled && lockMode != AccountLockMode.ROW) {
+            throw new IllegalStateException("Server-side posting operations lock account rows, " +
+                    "they can't be enabled with account locking mode: " + lockMode);
+        }
+        return new AccounterHandler(accountService, postingPlanService, transactionTemplate, transactionRetrier,
+                postingMetrics, idempotencyCache, finalizedPlanCache, serverSideEnabled);
     }
 }
@@ -1,32 +1,106 @@
 package dev.vality.shumway.config;
 
 import dev.vality.shumway.dao.AccountDao;
+import dev.vality.shumway.dao.AccountLockMode;
 import dev.vality.shumway.dao.AccountReplicaDao;
+import dev.vality.shumway.dao.PartitionDao;
+import dev.vality.shumway.dao.PostingOperationDao;
 import dev.vality.shumway.dao.PostingPlanDao;
 import dev.vality.shumway.dao.impl.AccountDaoImplNew;
+import dev.vality.shumway.dao.impl.AccountLockModeGuard;
 import dev.vality.shumway.dao.impl.AccountReplicaDaoImpl;
+import dev.vality.shumway.dao.impl.CachingAccountDao;
+import dev.vality.shumway.dao.impl.PartitionDaoImpl;
+import dev.vality.shumway.dao.impl.PostingOperationDaoImpl;
 import dev.vality.shumway.dao.impl.PostingPlanDaoImpl;
+import dev.vality.shumway.dao.impl.ReplicationLagMonitor;
+import dev.vality.shumway.dao.impl.RoutingAccountReplicaDao;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.sql.init.dependency.DependsOnDatabaseInitialization;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
 
 import javax.sql.DataSource;
 
 @Configuration
 public class DaoConfiguration {
 
+    @Value("${db.jdbc.copy_threshold}")
+    private int copyThreshold;
+
+    @Value("${replica.lag.max_ms}")
+    private long replicaMaxLagMs;
+
+    @Value("${replica.lag.check_interval_ms}")
+    private long replicaLagCheckIntervalMs;
+
+    @Bean
+    @DependsOnDatabaseInitialization
+    public AccountLockModeGuard accountLockModeGuard(
+            DataSource dataSource,
+            @Value("${account.locking.mode:row}") AccountLockMode lockMode,
+            @Value("${account.locking.switch_on_startup:false}") boolean switchOnStartup,
+            @Value("${account.locking.optimistic_enabled:false}") boolean optimisticEnabled
+    ) {
+        if (lockMode == AccountLockMode.OPTIMISTIC && !optimisticEnabled) {
+            throw new IllegalStateException("Optimistic account locking mode is not measured against row locks yet, " +
+                    "it's available with account.locking.optimistic_enabled only");
+        }
+        AccountLockModeGuard guard = new AccountLockModeGuard(dataSource, lockMode);
+        if (switchOnStartup) {
+            guard.switchMode();
+        } else {
+            guard.check();
+        }
+        return guard;
+    }
+
     @Bean(name = "accountDao")
-    public AccountDao accountDao(DataSource dataSource) {
-        return new AccountDaoImplNew(dataSource);
+    @DependsOn("accountLockModeGuard")
+    public AccountDao accountDao(
+            DataSource dataSource,
+            @Value("${account.cache.max_accounts}") long maxCachedAccounts,
+            @Value("${account.locking.mode:row}") AccountLockMode lockMode,
+            MeterRegistry meterRegistry
+    ) {
+        return new CachingAccountDao(new AccountDaoImplNew(dataSource, copyThreshold, lockMode), maxCachedAccounts,
+                meterRegistry);
     }
 
     @Bean(name = "replicaDao")
-    public AccountReplicaDao replicaDao(DataSource dataSource) {
-        return new AccountReplicaDaoImpl(dataSource);
+    public AccountReplicaDao replicaDao(
+            DataSource dataSource,
+            @Qualifier("replicaDataSource") ObjectProvider<DataSource> replicaDataSource,
+            MeterRegistry meterRegistry
+    ) {
+        AccountReplicaDao primaryDao = new AccountReplicaDaoImpl(dataSource);
+        DataSource replica = replicaDataSource.getIfAvailable();
+        if (replica == null) {
+            return primaryDao;
+        }
+        ReplicationLagMonitor lagMonitor = new ReplicationLagMonitor(dataSource, replica, replicaMaxLagMs,
+                replicaLagCheckIntervalMs, meterRegistry);
+        return new RoutingAccountReplicaDao(primaryDao, new AccountReplicaDaoImpl(replica), lagMonitor,
+                meterRegistry);
     }
 
     @Bean(name = "postingPlanDao")
     public PostingPlanDao postingPlanDao(DataSource dataSource) {
-        return new PostingPlanDaoImpl(dataSource);
+        return new PostingPlanDaoImpl(dataSource, copyThreshold);
+    }
+
+    @Bean(name = "partitionDao")
+    public PartitionDao partitionDao(DataSource dataSource) {
+        return new PartitionDaoImpl(dataSource);
+    }
+
+    @Bean(name = "postingOperationDao")
+    public PostingOperationDao postingOperationDao(DataSource dataSource) {
+        return new PostingOperationDaoImpl(dataSource);
     }
 
 }
@@ -0,0 +1,83 @@
+package dev.vality.shumway.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+/**
+ * Primary datasource is bound to spring.datasource as with auto-configuration,
+ * it's declared explicitly since replica datasource disables auto-configured one.
+ * Both pools get driver prepared statement settings of {@link PreparedStatementMode},
+ * explicit hikari data-source-properties take precedence.
+ */
+@Configuration
+public class DataSourceConfiguration {
+
+    @Value("${db.prepared_statements.mode:disabled}")
+    private PreparedStatementMode preparedStatementMode;
+
+    @Value("${db.prepared_statements.threshold:5}")
+    private int prepareThreshold;
+
+    @Value("${db.prepared_statements.cache_queries:256}")
+    private int cacheQueries;
+
+    @Value("${db.prepared_statements.cache_size_mib:5}")
+    private int cacheSizeMiB;
+
+    @Value("${db.prepared_statements.pooler_max_statements:200}")
+    private int poolerMaxStatements;
+
+    @Bean
+    @Primary
+    @ConfigurationProperties("spring.datasource")
+    public DataSourceProperties dataSourceProperties() {
+        return new DataSourceProperties();
+    }
+
+    @Bean
+    @Primary
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource dataSource(DataSourceProperties dataSourceProperties) {
+        return configurePreparedStatements(
+                dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build());
+    }
+
+    @Bean
+    @ConditionalOnProperty(value = "replica.enabled", havingValue = "true")
+    @ConfigurationProperties("replica.datasource")
+    public DataSourceProperties replicaDataSourceProperties() {
+        return new DataSourceProperties();
+    }
+
+    @Bean
+    @ConditionalOnProperty(value = "replica.enabled", havingValue = "true")
+    @ConfigurationProperties("replica.datasource.hikari")
+    public HikariDataSource replicaDataSource(
+            @Qualifier("replicaDataSourceProperties") DataSourceProperties replicaDataSourceProperties
+    ) {
+        return configurePreparedStatements(
+                replicaDataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build());
+    }
+
+    private HikariDataSource configurePreparedStatements(HikariDataSource dataSource) {
+        switch (preparedStatementMode) {
+            case DISABLED -> dataSource.addDataSourceProperty("prepareThreshold", "0");
+            case SERVER -> configureStatementCache(dataSource, cacheQueries);
+            case POOLER -> configureStatementCache(dataSource, Math.min(cacheQueries, poolerMaxStatements));
+        }
+        return dataSource;
+    }
+
+    private void configureStatementCache(HikariDataSource dataSource, int statementCacheQueries) {
+        dataSource.addDataSourceProperty("prepareThreshold", String.valueOf(prepareThreshold));
+        dataSource.addDataSourceProperty("preparedStatementCacheQueries", String.valueOf(statementCacheQueries));
+        dataSource.addDataSourceProperty("preparedStatementCacheSizeMiB", String.valueOf(cacheSizeMiB));
+    }
+}
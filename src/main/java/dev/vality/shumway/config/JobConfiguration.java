@@ -0,0 +1,36 @@
+package dev.vality.shumway.config;
+
+import dev.vality.shumway.dao.AccountDao;
+import dev.vality.shumway.dao.PartitionDao;
+import dev.vality.shumway.job.AccountLogCompactionJob;
+import dev.vality.shumway.job.PartitionMaintenanceJob;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+@Configuration
+@EnableScheduling
+public class JobConfiguration {
+
+    @Bean
+    @ConditionalOnProperty(value = "partition.maintenance.enabled", havingValue = "true")
+    public PartitionMaintenanceJob partitionMaintenanceJob(
+            PartitionDao partitionDao,
+            @Value("${partition.maintenance.months_ahead}") int monthsAhead
+    ) {
+        return new PartitionMaintenanceJob(partitionDao, monthsAhead);
+    }
+
+    @Bean
+    @ConditionalOnProperty(value = "account.compaction.enabled", havingValue = "true")
+    public AccountLogCompactionJob accountLogCompactionJob(
+            AccountDao accountDao,
+            @Value("${account.compaction.logs_per_step}") int logsPerStep,
+            @Value("${account.compaction.max_steps}") int maxSteps,
+            @Value("${account.compaction.min_age_sec}") long minAgeSec
+    ) {
+        return new AccountLogCompactionJob(accountDao, logsPerStep, maxSteps, minAgeSec);
+    }
+}
@@ -0,0 +1,22 @@
+package dev.vality.shumway.config;
+
+/**
+ * Use of server-side prepared statements by the postgres driver.
+ */
+public enum PreparedStatementMode {
+    /**
+     * Unnamed statements only, each execution is parsed and planned. Safe with any connection pooler.
+     */
+    DISABLED,
+    /**
+     * Named server-side statements after threshold executions, kept in a bounded per connection cache.
+     * Requires direct connections or session pooling.
+     */
+    SERVER,
+    /**
+     * Server mode behind a transaction pooler, which tracks protocol-level named statements per backend
+     * (pgbouncer 1.21+ with max_prepared_statements). The statement cache is bounded by the pooler limit,
+     * otherwise the pooler evicts and re-prepares statements on backends.
+     */
+    POOLER
+}
@@ -0,0 +1,48 @@
+package dev.vality.shumway.config;
+
+import org.apache.coyote.ProtocolHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.sql.Driver;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Runs request handling on virtual threads: Tomcat connector starts a virtual thread per request instead of
+ * taking a worker of bounded pool, so bursts of requests waiting for account locks don't exhaust request threads.
+ * Request concurrency is bounded by server.tomcat.max-connections, database concurrency by Hikari pool size
+ * independently, requests beyond the pool wait for connection up to Hikari connection-timeout.
+ * Scheduled jobs keep running on the scheduler thread. Requires Java 21+ runtime, startup fails otherwise.
+ */
+@Configuration
+@ConditionalOnProperty(value = "request.virtual_threads.enabled", havingValue = "true")
+public class VirtualThreadConfiguration implements DisposableBean {
+    // socket I/O of older drivers is synchronized, which pins carrier threads for the whole query
+    private static final int MIN_UNPINNED_DRIVER_MINOR_VERSION = 6;
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private final ExecutorService requestExecutor = VirtualThreads.newThreadPerTaskExecutor();
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadProtocolHandlerCustomizer() {
+        Driver driver = new org.postgresql.Driver();
+        if (driver.getMajorVersion() < 42
+                || driver.getMajorVersion() == 42 && driver.getMinorVersion() < MIN_UNPINNED_DRIVER_MINOR_VERSION) {
+            log.warn("PostgreSQL driver {}.{} pins virtual threads during queries, 42.{}+ is expected",
+                    driver.getMajorVersion(), driver.getMinorVersion(), MIN_UNPINNED_DRIVER_MINOR_VERSION);
+        }
+        log.info("Requests are handled on virtual threads");
+        return protocolHandler -> protocolHandler.setExecutor(requestExecutor);
+    }
+
+    @Override
+    public void destroy() {
+        requestExecutor.shutdown();
+    }
+}
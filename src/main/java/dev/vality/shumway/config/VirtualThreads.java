@@ -0,0 +1,28 @@
+package dev.vality.shumway.config;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Virtual thread executors of Java 21 runtime, resolved reflectively, since the service is built for Java 17.
+ */
+final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return Executor, which starts a new virtual thread for each task
+     * @throws IllegalStateException if runtime doesn't support virtual threads
+     */
+    static ExecutorService newThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("Virtual threads require Java 21+ runtime, current: " +
+                    Runtime.version(), e);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Virtual thread executor can't be created", e);
+        }
+    }
+}
@@ -8,12 +8,25 @@ import dev.vality.shumway.domain.StatefulAccount;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public interface AccountDao {
     long add(Account prototype) throws DaoException;
 
+    /**
+     * Add new account logs. Current account states (shm.account_state) are updated in the same transaction.
+     */
     void addLogs(List<AccountLog> accountLogs) throws DaoException;
 
+    /**
+     * Add new account logs, which are computed from account states of referred versions.
+     * In optimistic lock mode states are locked in id order and their versions are checked first.
+     *
+     * @param expectedVersions State versions by account id ({@link AccountState#getVersion()})
+     * @throws AccountStateConflictException if account state version is changed
+     */
+    void addLogs(List<AccountLog> accountLogs, Map<Long, Long> expectedVersions) throws DaoException;
+
     Account get(long id) throws DaoException;
 
     List<Account> get(Collection<Long> ids) throws DaoException;
@@ -24,5 +37,42 @@ public interface AccountDao {
 
     Map<Long, StatefulAccount> getStatefulExclusive(Collection<Long> ids) throws DaoException;
 
+    /**
+     * @return Current states, default state for accounts without logs
+     */
     Map<Long, AccountState> getAccountStates(Collection<Long> accountIds) throws DaoException;
+
+    /**
+     * Locks accounts in id order till the end of transaction. In optimistic lock mode states are read
+     * without locks, but with versions.
+     *
+     * @return Current states of accounts, which have them
+     */
+    Map<Long, AccountState> getExclusiveAccountStates(Collection<Long> accountIds) throws DaoException;
+
+    /**
+     * @return States after the last log of referred plan batch, for accounts, which have such log
+     */
+    Map<Long, AccountState> getAccountStatesUpTo(Collection<Long> accountIds, String planId, long batchId)
+            throws DaoException;
+
+    /**
+     * @return Ordered stripe ids (the account itself goes first) for striped accounts only, which are referred
+     * by ids themselves or by their stripes
+     */
+    Map<Long, List<Long>> getStripes(Collection<Long> ids) throws DaoException;
+
+    /**
+     * @return Accounts from ids, which have logs of the plan
+     */
+    Set<Long> getPlanAccountIds(String planId, Collection<Long> ids) throws DaoException;
+
+    /**
+     * Folds hold logs of closed plans into final plan logs, which are marked as merged.
+     *
+     * @param logLimit  Max number of final logs to compact
+     * @param minAgeSec Min age of final logs to compact
+     * @return Number of compacted final logs
+     */
+    int compactLogs(int logLimit, long minAgeSec) throws DaoException;
 }
@@ -0,0 +1,27 @@
+package dev.vality.shumway.dao;
+
+/**
+ * Locking of accounts, which states are changed by posting operations.
+ * Accounts are locked in id order until the end of transaction in any mode, optimistic mode locks them
+ * only when account logs are written. Modes don't exclude each other, so all instances must use the same one,
+ * which is stored in the database and checked by exclusive account state functions
+ * (see {@link dev.vality.shumway.dao.impl.AccountLockModeGuard}).
+ */
+public enum AccountLockMode {
+    /**
+     * shm.account row locks (SELECT FOR UPDATE).
+     */
+    ROW,
+    /**
+     * Transaction-level advisory locks on account ids. Doesn't write account tuples, but doesn't exclude
+     * row lockers, so server-side posting operations can't be enabled.
+     */
+    ADVISORY,
+    /**
+     * No locks on read: account states are read with versions, which are checked when account logs are written
+     * (see {@link AccountDao#addLogs(java.util.List, java.util.Map)}). Changed state fails the transaction with
+     * {@link AccountStateConflictException} to be retried. Doesn't exclude row lockers either.
+     * Not measured against row locks yet, so it's enabled by account.locking.optimistic_enabled only.
+     */
+    OPTIMISTIC
+}
@@ -1,6 +1,8 @@
 package dev.vality.shumway.dao;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Map;
 import java.util.Optional;
 
 public interface AccountReplicaDao {
@@ -9,4 +11,15 @@ public interface AccountReplicaDao {
 
     Long getAccountBalance(long id, LocalDateTime dateTime) throws DaoException;
 
+    /**
+     * @return Balance diffs by account id, not found accounts are omitted
+     */
+    Map<Long, Long> getAccountBalanceDiffs(Collection<Long> ids, LocalDateTime fromTime, LocalDateTime toTime)
+            throws DaoException;
+
+    /**
+     * @return Balances by account id, not found accounts are omitted
+     */
+    Map<Long, Long> getAccountBalances(Collection<Long> ids, LocalDateTime dateTime) throws DaoException;
+
 }
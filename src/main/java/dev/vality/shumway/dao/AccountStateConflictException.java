@@ -0,0 +1,18 @@
+package dev.vality.shumway.dao;
+
+/**
+ * Account state is changed by concurrent transaction since it was read without lock,
+ * transaction must be rolled back and retried.
+ */
+public class AccountStateConflictException extends DaoException {
+    private final long accountId;
+
+    public AccountStateConflictException(long accountId) {
+        super("Account state is changed concurrently: " + accountId);
+        this.accountId = accountId;
+    }
+
+    public long getAccountId() {
+        return accountId;
+    }
+}
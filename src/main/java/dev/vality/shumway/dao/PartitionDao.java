@@ -0,0 +1,14 @@
+package dev.vality.shumway.dao;
+
+import java.util.List;
+
+public interface PartitionDao {
+
+    /**
+     * Creates monthly partitions of account and posting logs from the current month up to months ahead.
+     *
+     * @return Names of created partitions
+     */
+    List<String> createPartitions(int monthsAhead) throws DaoException;
+
+}
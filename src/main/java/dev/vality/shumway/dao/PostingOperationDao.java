@@ -0,0 +1,21 @@
+package dev.vality.shumway.dao;
+
+import dev.vality.shumway.domain.PostingLog;
+import dev.vality.shumway.domain.PostingPlanLog;
+import dev.vality.shumway.domain.StatefulAccount;
+
+import java.util.List;
+import java.util.Map;
+
+public interface PostingOperationDao {
+
+    /**
+     * Performs whole posting operation (plan update, postings check and persistence, account locking and logging)
+     * with single database call.
+     * Transaction must be rolled back if operation is not applied.
+     *
+     * @return Affected accounts, null if operation can't be applied as is and must be processed by regular flow.
+     */
+    Map<Long, StatefulAccount> execute(PostingPlanLog planLog, List<PostingLog> postingLogs) throws DaoException;
+
+}
@@ -30,7 +30,8 @@ public interface PostingPlanDao {
     PostingPlanLog getSharedPlanLog(String planId) throws DaoException;
 
     /**
-     * @return Posting log records containing referred posting operation
+     * @return Posting log records containing referred posting operation. Postings of finalized plans are
+     * hold postings with the operation and creation time of the plan finalization.
      */
     Map<Long, List<PostingLog>> getPostingLogs(String planId, PostingOperation operation) throws DaoException;
 
@@ -40,4 +41,48 @@ public interface PostingPlanDao {
      */
     void addPostingLogs(List<PostingLog> postingLogs) throws DaoException;
 
+    /**
+     * Finalize plan with its last operation, which refers to all hold postings of the plan.
+     * Received postings are expected to be validated against the hold ones.
+     */
+    void addPlanFinalization(PostingPlanLog planLog) throws DaoException;
+
+    /**
+     * @return Digest of held batches, null if plan not found or its holds are not tracked
+     */
+    byte[] getPlanDigest(String planId) throws DaoException;
+
+    /**
+     * @return Net amount diffs of held postings by account id
+     */
+    Map<Long, Long> getPlanAccountDiffs(String planId) throws DaoException;
+
+    /**
+     * @return Digests of held batches by batch id
+     */
+    Map<Long, byte[]> getBatchDigests(String planId) throws DaoException;
+
+    /**
+     * Non-locking read of held batch digest.
+     *
+     * @return Digest of the batch, null if plan is not found, finalized or its holds are not tracked
+     */
+    byte[] getHeldBatchDigest(String planId, long batchId) throws DaoException;
+
+    /**
+     * Extend held plan summary with new batch: save batch digest, chain plan digest with it and add account diffs.
+     *
+     * @param firstBatch true if batch is the first one of the plan, plan digest is not extended otherwise
+     *                   if it's not tracked
+     */
+    void addPlanBatchSummary(String planId, long batchId, byte[] batchDigest, boolean firstBatch,
+                             Map<Long, Long> accountDiffs) throws DaoException;
+
+    /**
+     * Delete account diffs and batch digests of finalized plan, plan digest is kept.
+     *
+     * @return Number of deleted rows
+     */
+    int deletePlanSummary(String planId) throws DaoException;
+
 }
@@ -1,6 +1,8 @@
 package dev.vality.shumway.dao.impl;
 
 import dev.vality.shumway.dao.AccountDao;
+import dev.vality.shumway.dao.AccountLockMode;
+import dev.vality.shumway.dao.AccountStateConflictException;
 import dev.vality.shumway.dao.DaoException;
 import dev.vality.shumway.domain.Account;
 import dev.vality.shumway.domain.AccountLog;
@@ -8,6 +10,7 @@ import dev.vality.shumway.domain.AccountState;
 import dev.vality.shumway.domain.StatefulAccount;
 import org.springframework.core.NestedRuntimeException;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcDaoSupport;
@@ -21,22 +24,48 @@ import java.sql.Types;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
 import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 public class AccountDaoImplNew extends NamedParameterJdbcDaoSupport implements AccountDao {
     private static final int BATCH_SIZE = 1000;
+    private static final int ACCOUNT_LOG_FIELD_COUNT = 13;
 
     private final AccountMapper accountMapper = new AccountMapper();
-    private final StatefulAccountMapper statefulAccountMapper = new StatefulAccountMapper();
-    private final AmountStatePairMapper amountStatePairMapper = new AmountStatePairMapper();
+    private final StatefulAccountMapper statefulAccountMapper = new StatefulAccountMapper(false);
+    private final StatefulAccountMapper versionedStatefulAccountMapper = new StatefulAccountMapper(true);
+    private final AmountStatePairMapper amountStatePairMapper = new AmountStatePairMapper(false);
+    private final AmountStatePairMapper versionedStatePairMapper = new AmountStatePairMapper(true);
+
+    private final int copyThreshold;
+    private final AccountLockMode lockMode;
 
     public AccountDaoImplNew(DataSource ds) {
+        this(ds, 0);
+    }
+
+    public AccountDaoImplNew(DataSource ds, int copyThreshold) {
+        this(ds, copyThreshold, AccountLockMode.ROW);
+    }
+
+    /**
+     * @param copyThreshold min number of logs to be written with binary COPY instead of batch insert,
+     *                      0 to always use batch insert
+     * @param lockMode      locking of accounts by exclusive state queries
+     */
+    public AccountDaoImplNew(DataSource ds, int copyThreshold, AccountLockMode lockMode) {
         setDataSource(ds);
+        this.copyThreshold = copyThreshold;
+        this.lockMode = lockMode;
     }
 
     @Override
@@ -45,7 +74,9 @@ public class AccountDaoImplNew extends NamedParameterJdbcDaoSupport implements A
                 "VALUES (:curr_sym_code, :creation_time, :description) RETURNING id;";
         MapSqlParameterSource params = new MapSqlParameterSource();
         params.addValue("curr_sym_code", prototype.getCurrSymCode());
-        params.addValue("creation_time", toLocalDateTime(prototype.getCreationTime()), Types.OTHER);
+        // database keeps microseconds, truncated explicitly to match cached accounts
+        params.addValue("creation_time", toLocalDateTime(prototype.getCreationTime().truncatedTo(ChronoUnit.MICROS)),
+                Types.OTHER);
         params.addValue("description", prototype.getDescription());
         try {
             GeneratedKeyHolder keyHolder = new GeneratedKeyHolder();
@@ -61,6 +92,10 @@ public class AccountDaoImplNew extends NamedParameterJdbcDaoSupport implements A
 
     @Override
     public void addLogs(List<AccountLog> logs) throws DaoException {
+        if (copyThreshold > 0 && logs.size() >= copyThreshold) {
+            copyLogs(logs);
+            return;
+        }
         final String sql = "INSERT INTO shm.account_log(plan_id, batch_id, account_id, operation, own_accumulated, " +
                 "max_accumulated, min_accumulated, own_diff, min_diff, max_diff, creation_time, credit, merged) " +
                 "VALUES (?, ?, ?, ?::shm.POSTING_OPERATION_TYPE,?, ?, ?, ?, ?, ?, ?, ?, ?)";
@@ -95,6 +130,61 @@ public class AccountDaoImplNew extends NamedParameterJdbcDaoSupport implements A
         }
     }
 
+    @Override
+    public void addLogs(List<AccountLog> logs, Map<Long, Long> expectedVersions) throws DaoException {
+        if (lockMode == AccountLockMode.OPTIMISTIC && !expectedVersions.isEmpty()) {
+            final String sql = "select shm.lock_account_state_versions(Array[ :ids ], Array[ :versions ])";
+            List<Long> ids = new ArrayList<>(expectedVersions.size());
+            List<Long> versions = new ArrayList<>(expectedVersions.size());
+            expectedVersions.forEach((id, version) -> {
+                ids.add(id);
+                versions.add(version);
+            });
+            MapSqlParameterSource params = new MapSqlParameterSource()
+                    .addValue("ids", ids)
+                    .addValue("versions", versions);
+            Long conflictId;
+            try {
+                conflictId = getNamedParameterJdbcTemplate().queryForObject(sql, params, Long.class);
+            } catch (NestedRuntimeException e) {
+                throw new DaoException(e);
+            }
+            if (conflictId != null) {
+                throw new AccountStateConflictException(conflictId);
+            }
+        }
+        addLogs(logs);
+    }
+
+    private void copyLogs(List<AccountLog> logs) throws DaoException {
+        final String sql = "COPY shm.account_log(plan_id, batch_id, account_id, operation, own_accumulated, " +
+                "max_accumulated, min_accumulated, own_diff, min_diff, max_diff, creation_time, credit, merged) " +
+                "FROM STDIN (FORMAT BINARY)";
+        try {
+            Long copied = getJdbcTemplate().execute((ConnectionCallback<Long>) con -> BinaryCopyWriter.copyIn(
+                    con, sql, logs, ACCOUNT_LOG_FIELD_COUNT, (writer, accountLog) -> writer
+                            .writeString(accountLog.getPlanId())
+                            .writeLong(accountLog.getBatchId())
+                            .writeLong(accountLog.getAccountId())
+                            .writeString(accountLog.getOperation().getKey())
+                            .writeLong(accountLog.getOwnAccumulated())
+                            .writeLong(accountLog.getMaxAccumulated())
+                            .writeLong(accountLog.getMinAccumulated())
+                            .writeLong(accountLog.getOwnDiff())
+                            .writeLong(accountLog.getMinDiff())
+                            .writeLong(accountLog.getMaxDiff())
+                            .writeTimestamp(toLocalDateTime(accountLog.getCreationTime()))
+                            .writeBoolean(accountLog.isCredit())
+                            .writeBoolean(accountLog.isMerged())
+            ));
+            if (copied == null || copied != logs.size()) {
+                throw new DaoException("Account log copy returned unexpected row count: " + copied);
+            }
+        } catch (NestedRuntimeException e) {
+            throw new DaoException(e);
+        }
+    }
+
     @Override
     public Account get(long id) {
         final String sql = "SELECT id, curr_sym_code, creation_time, description FROM shm.account WHERE id = :id";
@@ -166,7 +256,12 @@ public class AccountDaoImplNew extends NamedParameterJdbcDaoSupport implements A
         if (ids.isEmpty()) {
             return Collections.emptyMap();
         } else {
-            final String sql = "select * from shm.get_exclusive_acc_stat(Array[ :ids ])";
+            if (lockMode == AccountLockMode.OPTIMISTIC) {
+                return getVersionedStateful(ids);
+            }
+            final String sql = lockMode == AccountLockMode.ADVISORY
+                    ? "select * from shm.get_advisory_exclusive_acc_stat(Array[ :ids ])"
+                    : "select * from shm.get_exclusive_acc_stat(Array[ :ids ])";
             try {
                 return getNamedParameterJdbcTemplate()
                         .query(sql, new MapSqlParameterSource("ids", ids), statefulAccountMapper)
@@ -178,6 +273,29 @@ public class AccountDaoImplNew extends NamedParameterJdbcDaoSupport implements A
         }
     }
 
+    private Map<Long, StatefulAccount> getVersionedStateful(Collection<Long> ids) throws DaoException {
+        final String sql = "select " +
+                "ac.id as account_id, " +
+                "ac.curr_sym_code, " +
+                "ac.creation_time, " +
+                "ac.description, " +
+                "st.own_accumulated, " +
+                "st.max_accumulated, " +
+                "st.min_accumulated, " +
+                "st.version " +
+                "from shm.account ac " +
+                "left join shm.account_state st on st.account_id = ac.id " +
+                "where ac.id in (:ids)";
+        try {
+            return getNamedParameterJdbcTemplate()
+                    .query(sql, new MapSqlParameterSource("ids", ids), versionedStatefulAccountMapper)
+                    .stream()
+                    .collect(Collectors.toMap(Account::getId, acc -> acc));
+        } catch (NestedRuntimeException e) {
+            throw new DaoException(e);
+        }
+    }
+
     @Override
     public Map<Long, AccountState> getAccountStates(Collection<Long> accountIds) throws DaoException {
         if (accountIds.isEmpty()) {
@@ -188,9 +306,8 @@ public class AccountDaoImplNew extends NamedParameterJdbcDaoSupport implements A
                     "own_accumulated, " +
                     "max_accumulated, " +
                     "min_accumulated  " +
-                    "from shm.account_log al " +
-                    "join (values (:ids)) as t (acId) " +
-                    "on al.id = (select max(id) from shm.account_log  where account_id = t.acId);";
+                    "from shm.account_state " +
+                    "where account_id in (:ids)";
             try {
                 return fillAbsentValues(accountIds, getNamedParameterJdbcTemplate()
                         .query(sql, new MapSqlParameterSource("ids", accountIds), amountStatePairMapper)
@@ -202,6 +319,120 @@ public class AccountDaoImplNew extends NamedParameterJdbcDaoSupport implements A
         }
     }
 
+    @Override
+    public Map<Long, AccountState> getExclusiveAccountStates(Collection<Long> accountIds) throws DaoException {
+        if (accountIds.isEmpty()) {
+            return Collections.emptyMap();
+        } else {
+            if (lockMode == AccountLockMode.OPTIMISTIC) {
+                return getVersionedAccountStates(accountIds);
+            }
+            final String sql = lockMode == AccountLockMode.ADVISORY
+                    ? "select * from shm.get_advisory_exclusive_acc_state(Array[ :ids ])"
+                    : "select * from shm.get_exclusive_acc_state(Array[ :ids ])";
+            try {
+                return getNamedParameterJdbcTemplate()
+                        .query(sql, new MapSqlParameterSource("ids", accountIds), amountStatePairMapper)
+                        .stream()
+                        .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+            } catch (NestedRuntimeException e) {
+                throw new DaoException(e);
+            }
+        }
+    }
+
+    private Map<Long, AccountState> getVersionedAccountStates(Collection<Long> accountIds) throws DaoException {
+        final String sql = "select " +
+                "account_id, " +
+                "own_accumulated, " +
+                "max_accumulated, " +
+                "min_accumulated, " +
+                "version " +
+                "from shm.account_state " +
+                "where account_id in (:ids)";
+        try {
+            return getNamedParameterJdbcTemplate()
+                    .query(sql, new MapSqlParameterSource("ids", accountIds), versionedStatePairMapper)
+                    .stream()
+                    .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+        } catch (NestedRuntimeException e) {
+            throw new DaoException(e);
+        }
+    }
+
+    @Override
+    public Map<Long, AccountState> getAccountStatesUpTo(Collection<Long> accountIds, String planId, long batchId)
+            throws DaoException {
+        if (accountIds.isEmpty()) {
+            return Collections.emptyMap();
+        } else {
+            final String sql = "select * from shm.get_acc_state_upto(Array[ :ids ], :plan_id, :batch_id)";
+            MapSqlParameterSource params = new MapSqlParameterSource()
+                    .addValue("ids", accountIds)
+                    .addValue("plan_id", planId)
+                    .addValue("batch_id", batchId);
+            try {
+                return getNamedParameterJdbcTemplate().query(sql, params, amountStatePairMapper)
+                        .stream()
+                        .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+            } catch (NestedRuntimeException e) {
+                throw new DaoException(e);
+            }
+        }
+    }
+
+    @Override
+    public Map<Long, List<Long>> getStripes(Collection<Long> ids) throws DaoException {
+        if (ids.isEmpty()) {
+            return Collections.emptyMap();
+        } else {
+            final String sql = "select parent_id, id from shm.account " +
+                    "where parent_id in (select coalesce(parent_id, id) from shm.account where id in (:ids)) " +
+                    "order by parent_id, id";
+            try {
+                Map<Long, List<Long>> stripes = new HashMap<>();
+                getNamedParameterJdbcTemplate().query(sql, new MapSqlParameterSource("ids", ids), rs -> {
+                    long parentId = rs.getLong("parent_id");
+                    stripes.computeIfAbsent(parentId, id -> new ArrayList<>(List.of(id))).add(rs.getLong("id"));
+                });
+                return stripes;
+            } catch (NestedRuntimeException e) {
+                throw new DaoException(e);
+            }
+        }
+    }
+
+    @Override
+    public Set<Long> getPlanAccountIds(String planId, Collection<Long> ids) throws DaoException {
+        if (ids.isEmpty()) {
+            return Collections.emptySet();
+        } else {
+            final String sql = "select distinct account_id from shm.account_log " +
+                    "where plan_id = :plan_id " +
+                    "and account_id in (:ids) " +
+                    "and creation_time >= shm.plan_log_time_bound(:plan_id)";
+            MapSqlParameterSource params = new MapSqlParameterSource("plan_id", planId)
+                    .addValue("ids", ids);
+            try {
+                return new HashSet<>(getNamedParameterJdbcTemplate().queryForList(sql, params, Long.class));
+            } catch (NestedRuntimeException e) {
+                throw new DaoException(e);
+            }
+        }
+    }
+
+    @Override
+    public int compactLogs(int logLimit, long minAgeSec) throws DaoException {
+        final String sql = "select shm.compact_account_logs(:log_limit, make_interval(secs => :min_age_sec))";
+        MapSqlParameterSource params = new MapSqlParameterSource("log_limit", logLimit)
+                .addValue("min_age_sec", minAgeSec);
+        try {
+            return getNamedParameterJdbcTemplate().queryForObject(sql, params, Integer.class);
+        } catch (NestedRuntimeException e) {
+            throw new DaoException(e);
+        }
+    }
+
     private Map<Long, AccountState> fillAbsentValues(Collection<Long> accountIds, Map<Long, AccountState> stateMap) {
         accountIds.forEach(id -> stateMap.putIfAbsent(id, new AccountState()));
         return stateMap;
@@ -212,13 +443,21 @@ public class AccountDaoImplNew extends NamedParameterJdbcDaoSupport implements A
     }
 
     private static class AmountStatePairMapper implements RowMapper<Map.Entry<Long, AccountState>> {
+        private final boolean versioned;
+
+        AmountStatePairMapper(boolean versioned) {
+            this.versioned = versioned;
+        }
+
         @Override
         public Map.Entry<Long, AccountState> mapRow(ResultSet rs, int rowNum) throws SQLException {
             long accountId = rs.getLong("account_id");
             long ownAccumulatedAmount = rs.getLong("own_accumulated");
             long minAccumulatedDiff = rs.getLong("min_accumulated");
             long maxAccumulatedDiff = rs.getLong("max_accumulated");
-            AccountState accountState = new AccountState(ownAccumulatedAmount, minAccumulatedDiff, maxAccumulatedDiff);
+            long version = versioned ? rs.getLong("version") : 0;
+            AccountState accountState =
+                    new AccountState(ownAccumulatedAmount, minAccumulatedDiff, maxAccumulatedDiff, version);
             return new AbstractMap.SimpleEntry<>(accountId, accountState);
         }
     }
@@ -235,6 +474,12 @@ public class AccountDaoImplNew extends NamedParameterJdbcDaoSupport implements A
     }
 
     private static class StatefulAccountMapper implements RowMapper<StatefulAccount> {
+        private final boolean versioned;
+
+        StatefulAccountMapper(boolean versioned) {
+            this.versioned = versioned;
+        }
+
         @Override
         public StatefulAccount mapRow(ResultSet rs, int i) throws SQLException {
             AccountState accountState;
@@ -244,7 +489,8 @@ public class AccountDaoImplNew extends NamedParameterJdbcDaoSupport implements A
             } else {
                 long minAccumulatedDiff = rs.getLong("min_accumulated");
                 long maxAccumulatedDiff = rs.getLong("max_accumulated");
-                accountState = new AccountState(ownAccumulatedAmount, minAccumulatedDiff, maxAccumulatedDiff);
+                long version = versioned ? rs.getLong("version") : 0;
+                accountState = new AccountState(ownAccumulatedAmount, minAccumulatedDiff, maxAccumulatedDiff, version);
             }
 
             long id = rs.getLong("account_id");
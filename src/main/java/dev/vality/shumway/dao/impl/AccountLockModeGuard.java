@@ -0,0 +1,41 @@
+package dev.vality.shumway.dao.impl;
+
+import dev.vality.shumway.dao.AccountLockMode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.Locale;
+
+/**
+ * Guards account lock mode shared by all instances in shm.account_lock_mode: lock modes don't exclude each other,
+ * so instances with different modes must not run together. Exclusive account state functions fail transactions
+ * of the other modes, the guard fails startup of such instance instead.
+ * Mode is switched with all instances stopped: single instance with the new mode and enabled switch
+ * switches it on startup, after transactions of the previous mode are finished.
+ */
+public class AccountLockModeGuard {
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String mode;
+
+    public AccountLockModeGuard(DataSource dataSource, AccountLockMode lockMode) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.mode = lockMode.name().toLowerCase(Locale.ROOT);
+    }
+
+    public void check() {
+        String sharedMode = jdbcTemplate.queryForObject("select mode from shm.account_lock_mode", String.class);
+        if (!mode.equals(sharedMode)) {
+            throw new IllegalStateException("Account locking mode " + mode + " differs from the mode of running " +
+                    "instances: " + sharedMode + ", it must be switched with all instances stopped");
+        }
+    }
+
+    public void switchMode() {
+        jdbcTemplate.execute("select shm.switch_account_lock_mode('" + mode + "')");
+        log.info("Account locking mode is switched to {}", mode);
+    }
+}
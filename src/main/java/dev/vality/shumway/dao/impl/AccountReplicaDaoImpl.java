@@ -13,6 +13,11 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
 
 public class AccountReplicaDaoImpl extends NamedParameterJdbcDaoSupport implements AccountReplicaDao {
 
@@ -25,19 +30,20 @@ public class AccountReplicaDaoImpl extends NamedParameterJdbcDaoSupport implemen
     @Override
     public Long getAccountBalanceDiff(long id, LocalDateTime fromTime, LocalDateTime toTime) throws DaoException {
         final String sql = """
-                with finish_amount as
-                (select account_id, own_accumulated from shm.account_log
-                    where account_id = :id and creation_time < :to_time
-                        order by creation_time desc limit 1),
-                    start_amount as
-                    (select account_id, own_accumulated from shm.account_log
-                        where account_id = :id and creation_time < :from_time
-                            order by creation_time desc limit 1)
-                select coalesce(finish_amount.own_accumulated, 0) - coalesce(start_amount.own_accumulated, 0) as balance
-                from  shm.account a
-                left join finish_amount on a.id = finish_amount.account_id
-                left join start_amount on a.id = start_amount.account_id
-                where a.id = :id""";
+                select sum(
+                    coalesce(finish_amount.own_accumulated, 0) - coalesce(start_amount.own_accumulated, 0)
+                )::bigint as balance
+                from shm.account a
+                left join lateral
+                    (select own_accumulated from shm.account_log
+                        where account_id = a.id and creation_time < :to_time
+                            order by creation_time desc, id desc limit 1) finish_amount on true
+                left join lateral
+                    (select own_accumulated from shm.account_log
+                        where account_id = a.id and creation_time < :from_time
+                            order by creation_time desc, id desc limit 1) start_amount on true
+                where a.id = :id or a.parent_id = :id
+                having count(a.id) > 0""";
 
         MapSqlParameterSource params =
                 new MapSqlParameterSource().addValue("id", id).addValue("from_time", fromTime, Types.OTHER)
@@ -54,14 +60,14 @@ public class AccountReplicaDaoImpl extends NamedParameterJdbcDaoSupport implemen
     @Override
     public Long getAccountBalance(long id, LocalDateTime dateTime) throws DaoException {
         final String sql = """
-                with current_amount as
-                (select account_id, own_accumulated from shm.account_log
-                    where account_id = :id and creation_time < :to_time
-                        order by creation_time desc limit 1)
-                select coalesce(current_amount.own_accumulated, 0) as balance
-                from  shm.account a
-                left join current_amount on a.id = current_amount.account_id
-                where a.id = :id""";
+                select sum(coalesce(current_amount.own_accumulated, 0))::bigint as balance
+                from shm.account a
+                left join lateral
+                    (select own_accumulated from shm.account_log
+                        where account_id = a.id and creation_time < :to_time
+                            order by creation_time desc, id desc limit 1) current_amount on true
+                where a.id = :id or a.parent_id = :id
+                having count(a.id) > 0""";
 
         MapSqlParameterSource params =
                 new MapSqlParameterSource().addValue("id", id).addValue("to_time", dateTime, Types.OTHER);
@@ -74,6 +80,71 @@ public class AccountReplicaDaoImpl extends NamedParameterJdbcDaoSupport implemen
         }
     }
 
+    @Override
+    public Map<Long, Long> getAccountBalanceDiffs(Collection<Long> ids, LocalDateTime fromTime,
+                                                  LocalDateTime toTime) throws DaoException {
+        if (ids.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        final String sql = """
+                select req.id as account_id, sum(
+                    coalesce(finish_amount.own_accumulated, 0) - coalesce(start_amount.own_accumulated, 0)
+                )::bigint as balance
+                from unnest(cast(:ids as bigint[])) as req(id)
+                join shm.account a on a.id = req.id or a.parent_id = req.id
+                left join lateral
+                    (select own_accumulated from shm.account_log
+                        where account_id = a.id and creation_time < :to_time
+                            order by creation_time desc, id desc limit 1) finish_amount on true
+                left join lateral
+                    (select own_accumulated from shm.account_log
+                        where account_id = a.id and creation_time < :from_time
+                            order by creation_time desc, id desc limit 1) start_amount on true
+                group by req.id""";
+
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("ids", toIdArray(ids))
+                .addValue("from_time", fromTime, Types.OTHER)
+                .addValue("to_time", toTime, Types.OTHER);
+        return queryBalances(sql, params);
+    }
+
+    @Override
+    public Map<Long, Long> getAccountBalances(Collection<Long> ids, LocalDateTime dateTime) throws DaoException {
+        if (ids.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        final String sql = """
+                select req.id as account_id, sum(coalesce(current_amount.own_accumulated, 0))::bigint as balance
+                from unnest(cast(:ids as bigint[])) as req(id)
+                join shm.account a on a.id = req.id or a.parent_id = req.id
+                left join lateral
+                    (select own_accumulated from shm.account_log
+                        where account_id = a.id and creation_time < :to_time
+                            order by creation_time desc, id desc limit 1) current_amount on true
+                group by req.id""";
+
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("ids", toIdArray(ids))
+                .addValue("to_time", dateTime, Types.OTHER);
+        return queryBalances(sql, params);
+    }
+
+    private Map<Long, Long> queryBalances(String sql, MapSqlParameterSource params) throws DaoException {
+        Map<Long, Long> balances = new HashMap<>();
+        try {
+            getNamedParameterJdbcTemplate().query(sql, params,
+                    rs -> balances.put(rs.getLong("account_id"), rs.getLong("balance")));
+            return balances;
+        } catch (NestedRuntimeException e) {
+            throw new DaoException(e);
+        }
+    }
+
+    private static Long[] toIdArray(Collection<Long> ids) {
+        return new LinkedHashSet<>(ids).toArray(new Long[0]);
+    }
+
     private static class AccountBalanceMapper implements RowMapper<Long> {
         @Override
         public Long mapRow(ResultSet rs, int i) throws SQLException {
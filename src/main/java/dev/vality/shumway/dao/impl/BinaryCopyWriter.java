@@ -0,0 +1,103 @@
+package dev.vality.shumway.dao.impl;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.PGCopyOutputStream;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+
+/**
+ * Streams rows into PostgreSQL with binary COPY protocol.
+ * Copy statement is expected to be in form: {@code COPY table (columns) FROM STDIN (FORMAT BINARY)}.
+ */
+public class BinaryCopyWriter {
+    private static final byte[] SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+    private static final LocalDateTime PG_EPOCH = LocalDateTime.of(2000, 1, 1, 0, 0);
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final DataOutputStream out;
+
+    private BinaryCopyWriter(DataOutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * @return Number of copied rows
+     */
+    public static <T> long copyIn(Connection connection, String copySql, Collection<T> rows, int fieldCount,
+                                  RowEncoder<T> encoder) throws SQLException {
+        CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(copySql);
+        try {
+            PGCopyOutputStream copyOut = new PGCopyOutputStream(copyIn, BUFFER_SIZE);
+            BinaryCopyWriter writer = new BinaryCopyWriter(new DataOutputStream(copyOut));
+            writer.out.write(SIGNATURE);
+            writer.out.writeInt(0);
+            writer.out.writeInt(0);
+            for (T row : rows) {
+                writer.out.writeShort(fieldCount);
+                encoder.encode(writer, row);
+            }
+            writer.out.writeShort(-1);
+            writer.out.flush();
+            return copyOut.endCopy();
+        } catch (IOException e) {
+            cancel(copyIn);
+            throw new SQLException("Failed to write binary copy data", e);
+        } catch (SQLException | RuntimeException e) {
+            cancel(copyIn);
+            throw e;
+        }
+    }
+
+    private static void cancel(CopyIn copyIn) throws SQLException {
+        if (copyIn.isActive()) {
+            copyIn.cancelCopy();
+        }
+    }
+
+    public BinaryCopyWriter writeLong(long value) throws IOException {
+        out.writeInt(Long.BYTES);
+        out.writeLong(value);
+        return this;
+    }
+
+    public BinaryCopyWriter writeBoolean(boolean value) throws IOException {
+        out.writeInt(1);
+        out.writeByte(value ? 1 : 0);
+        return this;
+    }
+
+    /**
+     * Writes text value, applicable for text, varchar and enum columns.
+     */
+    public BinaryCopyWriter writeString(String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        return this;
+    }
+
+    /**
+     * Writes value of {@code timestamp without time zone} column.
+     */
+    public BinaryCopyWriter writeTimestamp(LocalDateTime value) throws IOException {
+        out.writeInt(Long.BYTES);
+        out.writeLong(ChronoUnit.MICROS.between(PG_EPOCH, value));
+        return this;
+    }
+
+    public interface RowEncoder<T> {
+        void encode(BinaryCopyWriter writer, T row) throws IOException;
+    }
+}
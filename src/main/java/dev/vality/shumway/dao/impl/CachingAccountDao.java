@@ -0,0 +1,151 @@
+package dev.vality.shumway.dao.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import dev.vality.shumway.dao.AccountDao;
+import dev.vality.shumway.dao.DaoException;
+import dev.vality.shumway.domain.Account;
+import dev.vality.shumway.domain.AccountLog;
+import dev.vality.shumway.domain.AccountState;
+import dev.vality.shumway.domain.StatefulAccount;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps immutable account attributes (currency, creation time, description) in memory, cached on creation
+ * and on first read. Stateful accounts are assembled from cached accounts and account states,
+ * so state queries don't read shm.account. Not found accounts are not cached.
+ */
+public class CachingAccountDao implements AccountDao {
+    public static final String CACHE_NAME = "account";
+
+    private final AccountDao accountDao;
+    private final Cache<Long, Account> accounts;
+
+    public CachingAccountDao(AccountDao accountDao, long maxAccounts, MeterRegistry meterRegistry) {
+        this.accountDao = accountDao;
+        this.accounts = Caffeine.newBuilder()
+                .maximumSize(maxAccounts)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, accounts, CACHE_NAME);
+    }
+
+    @Override
+    public long add(Account prototype) throws DaoException {
+        long id = accountDao.add(prototype);
+        accounts.put(id, new Account(id, prototype.getCreationTime().truncatedTo(ChronoUnit.MICROS),
+                prototype.getCurrSymCode(), prototype.getDescription()));
+        return id;
+    }
+
+    @Override
+    public void addLogs(List<AccountLog> accountLogs) throws DaoException {
+        accountDao.addLogs(accountLogs);
+    }
+
+    @Override
+    public void addLogs(List<AccountLog> accountLogs, Map<Long, Long> expectedVersions) throws DaoException {
+        accountDao.addLogs(accountLogs, expectedVersions);
+    }
+
+    @Override
+    public Account get(long id) throws DaoException {
+        Account account = accounts.getIfPresent(id);
+        if (account == null) {
+            // loaded outside of cache entry lock, which would pin virtual thread for the query
+            account = accountDao.get(id);
+            if (account != null) {
+                accounts.put(id, account);
+            }
+        }
+        return account;
+    }
+
+    @Override
+    public List<Account> get(Collection<Long> ids) throws DaoException {
+        return new ArrayList<>(getAccounts(ids).values());
+    }
+
+    @Override
+    public Map<Long, StatefulAccount> getStatefulUpTo(Collection<Long> ids, String planId, long batchId)
+            throws DaoException {
+        Map<Long, Account> found = getAccounts(ids);
+        return toStateful(found, accountDao.getAccountStatesUpTo(found.keySet(), planId, batchId));
+    }
+
+    @Override
+    public Map<Long, StatefulAccount> getStateful(Collection<Long> ids) throws DaoException {
+        Map<Long, Account> found = getAccounts(ids);
+        return toStateful(found, accountDao.getAccountStates(found.keySet()));
+    }
+
+    @Override
+    public Map<Long, StatefulAccount> getStatefulExclusive(Collection<Long> ids) throws DaoException {
+        Map<Long, Account> found = getAccounts(ids);
+        return toStateful(found, accountDao.getExclusiveAccountStates(found.keySet()));
+    }
+
+    @Override
+    public Map<Long, AccountState> getAccountStates(Collection<Long> accountIds) throws DaoException {
+        return accountDao.getAccountStates(accountIds);
+    }
+
+    @Override
+    public Map<Long, AccountState> getExclusiveAccountStates(Collection<Long> accountIds) throws DaoException {
+        return accountDao.getExclusiveAccountStates(accountIds);
+    }
+
+    @Override
+    public Map<Long, AccountState> getAccountStatesUpTo(Collection<Long> accountIds, String planId, long batchId)
+            throws DaoException {
+        return accountDao.getAccountStatesUpTo(accountIds, planId, batchId);
+    }
+
+    @Override
+    public Map<Long, List<Long>> getStripes(Collection<Long> ids) throws DaoException {
+        return accountDao.getStripes(ids);
+    }
+
+    @Override
+    public Set<Long> getPlanAccountIds(String planId, Collection<Long> ids) throws DaoException {
+        return accountDao.getPlanAccountIds(planId, ids);
+    }
+
+    @Override
+    public int compactLogs(int logLimit, long minAgeSec) throws DaoException {
+        return accountDao.compactLogs(logLimit, minAgeSec);
+    }
+
+    private Map<Long, Account> getAccounts(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        return accounts.getAll(ids, this::loadAccounts);
+    }
+
+    private Map<Long, Account> loadAccounts(Set<? extends Long> ids) {
+        Map<Long, Account> result = new HashMap<>(ids.size() * 2);
+        for (Account account : accountDao.get(new ArrayList<Long>(ids))) {
+            result.put(account.getId(), account);
+        }
+        return result;
+    }
+
+    private static Map<Long, StatefulAccount> toStateful(Map<Long, Account> accounts,
+                                                         Map<Long, AccountState> states) {
+        Map<Long, StatefulAccount> result = new HashMap<>(accounts.size() * 2);
+        accounts.forEach((id, account) ->
+                result.put(id, new StatefulAccount(account, states.getOrDefault(id, new AccountState()))));
+        return result;
+    }
+}
@@ -0,0 +1,26 @@
+package dev.vality.shumway.dao.impl;
+
+import dev.vality.shumway.dao.DaoException;
+import dev.vality.shumway.dao.PartitionDao;
+import org.springframework.core.NestedRuntimeException;
+import org.springframework.jdbc.core.support.JdbcDaoSupport;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+public class PartitionDaoImpl extends JdbcDaoSupport implements PartitionDao {
+
+    public PartitionDaoImpl(DataSource ds) {
+        setDataSource(ds);
+    }
+
+    @Override
+    public List<String> createPartitions(int monthsAhead) throws DaoException {
+        final String sql = "select * from shm.create_log_partitions(?)";
+        try {
+            return getJdbcTemplate().queryForList(sql, String.class, monthsAhead);
+        } catch (NestedRuntimeException e) {
+            throw new DaoException(e);
+        }
+    }
+}
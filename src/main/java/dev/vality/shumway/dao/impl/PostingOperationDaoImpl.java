@@ -0,0 +1,115 @@
+package dev.vality.shumway.dao.impl;
+
+import dev.vality.shumway.dao.DaoException;
+import dev.vality.shumway.dao.PostingOperationDao;
+import dev.vality.shumway.domain.AccountState;
+import dev.vality.shumway.domain.PostingLog;
+import dev.vality.shumway.domain.PostingPlanLog;
+import dev.vality.shumway.domain.StatefulAccount;
+import org.springframework.core.NestedRuntimeException;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.support.JdbcDaoSupport;
+
+import javax.sql.DataSource;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+public class PostingOperationDaoImpl extends JdbcDaoSupport implements PostingOperationDao {
+    private static final String STATUS_OK = "OK";
+
+    private final OperationResultMapper resultMapper = new OperationResultMapper();
+
+    public PostingOperationDaoImpl(DataSource ds) {
+        setDataSource(ds);
+    }
+
+    @Override
+    public Map<Long, StatefulAccount> execute(PostingPlanLog planLog, List<PostingLog> postingLogs)
+            throws DaoException {
+        final String sql = "select * from shm.do_posting_operation(" +
+                "?, ?::shm.posting_operation_type, ?, ?, ?, ?, ?, ?, ?, ?)";
+        int size = postingLogs.size();
+        Long[] batchIds = new Long[size];
+        Long[] fromIds = new Long[size];
+        Long[] toIds = new Long[size];
+        Long[] amounts = new Long[size];
+        String[] currSymCodes = new String[size];
+        String[] descriptions = new String[size];
+        for (int i = 0; i < size; i++) {
+            PostingLog postingLog = postingLogs.get(i);
+            batchIds[i] = postingLog.getBatchId();
+            fromIds[i] = postingLog.getFromAccountId();
+            toIds[i] = postingLog.getToAccountId();
+            amounts[i] = postingLog.getAmount();
+            currSymCodes[i] = postingLog.getCurrSymCode();
+            descriptions[i] = postingLog.getDescription();
+        }
+        try {
+            List<OperationResult> results = getJdbcTemplate().query(con -> {
+                PreparedStatement ps = con.prepareStatement(sql);
+                ps.setString(1, planLog.getPlanId());
+                ps.setString(2, planLog.getLastOperation().getKey());
+                ps.setLong(3, planLog.getLastBatchId());
+                ps.setObject(4, toLocalDateTime(planLog.getLastAccessTime()));
+                ps.setArray(5, con.createArrayOf("bigint", batchIds));
+                ps.setArray(6, con.createArrayOf("bigint", fromIds));
+                ps.setArray(7, con.createArrayOf("bigint", toIds));
+                ps.setArray(8, con.createArrayOf("bigint", amounts));
+                ps.setArray(9, con.createArrayOf("varchar", currSymCodes));
+                ps.setArray(10, con.createArrayOf("varchar", descriptions));
+                return ps;
+            }, resultMapper);
+            if (results.isEmpty() || !STATUS_OK.equals(results.get(0).status)) {
+                return null;
+            }
+            return results.stream()
+                    .map(result -> result.account)
+                    .collect(Collectors.toMap(StatefulAccount::getId, acc -> acc));
+        } catch (NestedRuntimeException e) {
+            throw new DaoException(e);
+        }
+    }
+
+    private LocalDateTime toLocalDateTime(Instant instant) {
+        return LocalDateTime.ofInstant(instant, ZoneOffset.UTC);
+    }
+
+    private static class OperationResult {
+        private final String status;
+        private final StatefulAccount account;
+
+        private OperationResult(String status, StatefulAccount account) {
+            this.status = status;
+            this.account = account;
+        }
+    }
+
+    private static class OperationResultMapper implements RowMapper<OperationResult> {
+        @Override
+        public OperationResult mapRow(ResultSet rs, int i) throws SQLException {
+            String status = rs.getString("status");
+            if (!STATUS_OK.equals(status)) {
+                return new OperationResult(status, null);
+            }
+            AccountState accountState = new AccountState(
+                    rs.getLong("own_accumulated"),
+                    rs.getLong("min_accumulated"),
+                    rs.getLong("max_accumulated")
+            );
+            long id = rs.getLong("account_id");
+            String currSymCode = rs.getString("curr_sym_code");
+            Instant creationTime = rs.getObject("creation_time", LocalDateTime.class).toInstant(ZoneOffset.UTC);
+            String description = rs.getString("description");
+            return new OperationResult(status,
+                    new StatefulAccount(id, creationTime, currSymCode, description, accountState));
+        }
+    }
+}
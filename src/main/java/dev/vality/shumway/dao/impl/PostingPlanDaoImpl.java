@@ -7,6 +7,7 @@ import dev.vality.shumway.domain.PostingOperation;
 import dev.vality.shumway.domain.PostingPlanLog;
 import org.springframework.core.NestedRuntimeException;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcDaoSupport;
@@ -15,8 +16,9 @@ import javax.sql.DataSource;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Timestamp;
 import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -25,12 +27,24 @@ import java.util.stream.Collectors;
 
 public class PostingPlanDaoImpl extends NamedParameterJdbcDaoSupport implements PostingPlanDao {
     private static final int BATCH_SIZE = 1000;
+    private static final int POSTING_LOG_FIELD_COUNT = 9;
 
     private final PostingPlanLogMapper planRowMapper = new PostingPlanLogMapper();
     private final PostingLogMapper postingRowMapper = new PostingLogMapper();
 
+    private final int copyThreshold;
+
     public PostingPlanDaoImpl(DataSource ds) {
+        this(ds, 0);
+    }
+
+    /**
+     * @param copyThreshold min number of posting logs to be written with binary COPY instead of batch insert,
+     *                      0 to always use batch insert
+     */
+    public PostingPlanDaoImpl(DataSource ds, int copyThreshold) {
         setDataSource(ds);
+        this.copyThreshold = copyThreshold;
     }
 
     @Override
@@ -102,8 +116,20 @@ public class PostingPlanDaoImpl extends NamedParameterJdbcDaoSupport implements
 
     @Override
     public Map<Long, List<PostingLog>> getPostingLogs(String planId, PostingOperation operation) throws DaoException {
-        final String sql = "select * from shm.posting_log " +
-                "where plan_id = :plan_id and operation = :operation::shm.posting_operation_type";
+        // final operation postings are either hold postings referred by plan finalization or legacy copies,
+        // partitions older than the plan are skipped
+        final String sql = "select id, plan_id, batch_id, from_account_id, to_account_id, creation_time, " +
+                "amount, curr_sym_code, operation, description " +
+                "from shm.posting_log " +
+                "where plan_id = :plan_id and operation = :operation::shm.posting_operation_type " +
+                "and creation_time >= shm.plan_log_time_bound(:plan_id) " +
+                "union all " +
+                "select p.id, p.plan_id, p.batch_id, p.from_account_id, p.to_account_id, f.creation_time, " +
+                "p.amount, p.curr_sym_code, f.operation, p.description " +
+                "from shm.plan_finalization f " +
+                "join shm.posting_log p on p.plan_id = f.plan_id and p.operation = 'HOLD' " +
+                "and p.creation_time >= shm.plan_log_time_bound(:plan_id) " +
+                "where f.plan_id = :plan_id and f.operation = :operation::shm.posting_operation_type";
         MapSqlParameterSource params = new MapSqlParameterSource();
         params.addValue("plan_id", planId);
         params.addValue("operation", operation.getKey());
@@ -117,6 +143,10 @@ public class PostingPlanDaoImpl extends NamedParameterJdbcDaoSupport implements
 
     @Override
     public void addPostingLogs(List<PostingLog> postingLogs) throws DaoException {
+        if (copyThreshold > 0 && postingLogs.size() >= copyThreshold) {
+            copyPostingLogs(postingLogs);
+            return;
+        }
         final String sql = "INSERT INTO shm.posting_log(plan_id, batch_id, from_account_id, to_account_id, " +
                 "creation_time, amount, curr_sym_code, operation, description) " +
                 "VALUES (?, ?, ?, ?, ?, ?, ?, ?::shm.posting_operation_type, ?)";
@@ -126,7 +156,7 @@ public class PostingPlanDaoImpl extends NamedParameterJdbcDaoSupport implements
                     ps.setLong(2, argument.getBatchId());
                     ps.setLong(3, argument.getFromAccountId());
                     ps.setLong(4, argument.getToAccountId());
-                    ps.setTimestamp(5, Timestamp.from(argument.getCreationTime()));
+                    ps.setObject(5, toLocalDateTime(argument.getCreationTime()));
                     ps.setLong(6, argument.getAmount());
                     ps.setString(7, argument.getCurrSymCode());
                     ps.setString(8, argument.getOperation().getKey());
@@ -147,17 +177,165 @@ public class PostingPlanDaoImpl extends NamedParameterJdbcDaoSupport implements
         }
     }
 
+    @Override
+    public void addPlanFinalization(PostingPlanLog planLog) throws DaoException {
+        final String sql = "insert into shm.plan_finalization (plan_id, operation, creation_time) " +
+                "values (:plan_id, :operation::shm.posting_operation_type, :creation_time)";
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        params.addValue("plan_id", planLog.getPlanId());
+        params.addValue("operation", planLog.getLastOperation().getKey());
+        params.addValue("creation_time", toLocalDateTime(planLog.getLastAccessTime()));
+        try {
+            int updateCount = getNamedParameterJdbcTemplate().update(sql, params);
+            if (updateCount != 1) {
+                throw new DaoException("Plan finalization creation returned unexpected update count: " + updateCount);
+            }
+        } catch (NestedRuntimeException e) {
+            throw new DaoException(e);
+        }
+    }
+
+    @Override
+    public byte[] getPlanDigest(String planId) throws DaoException {
+        final String sql = "select digest from shm.plan_log where plan_id = :plan_id";
+        MapSqlParameterSource params = new MapSqlParameterSource("plan_id", planId);
+        try {
+            return getNamedParameterJdbcTemplate().queryForObject(sql, params, byte[].class);
+        } catch (EmptyResultDataAccessException e) {
+            return null;
+        } catch (NestedRuntimeException e) {
+            throw new DaoException(e);
+        }
+    }
+
+    @Override
+    public Map<Long, Long> getPlanAccountDiffs(String planId) throws DaoException {
+        final String sql = "select account_id, diff from shm.plan_account_diff where plan_id = :plan_id";
+        MapSqlParameterSource params = new MapSqlParameterSource("plan_id", planId);
+        try {
+            return getNamedParameterJdbcTemplate().query(sql, params,
+                            (rs, rowNum) -> Map.entry(rs.getLong("account_id"), rs.getLong("diff")))
+                    .stream()
+                    .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+        } catch (NestedRuntimeException e) {
+            throw new DaoException(e);
+        }
+    }
+
+    @Override
+    public Map<Long, byte[]> getBatchDigests(String planId) throws DaoException {
+        final String sql = "select batch_id, digest from shm.batch_digest where plan_id = :plan_id";
+        MapSqlParameterSource params = new MapSqlParameterSource("plan_id", planId);
+        try {
+            return getNamedParameterJdbcTemplate().query(sql, params,
+                            (rs, rowNum) -> Map.entry(rs.getLong("batch_id"), rs.getBytes("digest")))
+                    .stream()
+                    .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+        } catch (NestedRuntimeException e) {
+            throw new DaoException(e);
+        }
+    }
+
+    @Override
+    public byte[] getHeldBatchDigest(String planId, long batchId) throws DaoException {
+        final String sql = "select b.digest from shm.plan_log p " +
+                "join shm.batch_digest b on b.plan_id = p.plan_id and b.batch_id = :batch_id " +
+                "where p.plan_id = :plan_id and p.last_operation = 'HOLD' and p.digest is not null";
+        MapSqlParameterSource params = new MapSqlParameterSource("plan_id", planId);
+        params.addValue("batch_id", batchId);
+        try {
+            return getNamedParameterJdbcTemplate().queryForObject(sql, params, byte[].class);
+        } catch (EmptyResultDataAccessException e) {
+            return null;
+        } catch (NestedRuntimeException e) {
+            throw new DaoException(e);
+        }
+    }
+
+    @Override
+    public void addPlanBatchSummary(String planId, long batchId, byte[] batchDigest, boolean firstBatch,
+                                    Map<Long, Long> accountDiffs) throws DaoException {
+        final String batchDigestSql = "insert into shm.batch_digest (plan_id, batch_id, digest) " +
+                "values (:plan_id, :batch_id, :batch_digest)";
+        // untracked (null) digest stays null, as sha256 of null is null
+        final String digestSql = "update shm.plan_log " +
+                "set digest = sha256(case when :first_batch then ''::bytea else digest end || :batch_digest) " +
+                "where plan_id = :plan_id";
+        final String diffSql = "insert into shm.plan_account_diff (plan_id, account_id, diff) values (?, ?, ?) " +
+                "on conflict (plan_id, account_id) do update set diff = shm.plan_account_diff.diff + excluded.diff";
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        params.addValue("plan_id", planId);
+        params.addValue("batch_id", batchId);
+        params.addValue("first_batch", firstBatch);
+        params.addValue("batch_digest", batchDigest);
+        try {
+            getNamedParameterJdbcTemplate().update(batchDigestSql, params);
+            int updateCount = getNamedParameterJdbcTemplate().update(digestSql, params);
+            if (updateCount != 1) {
+                throw new DaoException("Plan digest update returned unexpected update count: " + updateCount);
+            }
+            getJdbcTemplate().batchUpdate(diffSql, accountDiffs.entrySet(), BATCH_SIZE,
+                    (ps, argument) -> {
+                        ps.setString(1, planId);
+                        ps.setLong(2, argument.getKey());
+                        ps.setLong(3, argument.getValue());
+                    });
+        } catch (NestedRuntimeException e) {
+            throw new DaoException(e);
+        }
+    }
+
+    @Override
+    public int deletePlanSummary(String planId) throws DaoException {
+        final String sql = "select shm.delete_plan_summary(:plan_id)";
+        try {
+            return getNamedParameterJdbcTemplate()
+                    .queryForObject(sql, new MapSqlParameterSource("plan_id", planId), Integer.class);
+        } catch (NestedRuntimeException e) {
+            throw new DaoException(e);
+        }
+    }
+
+    private void copyPostingLogs(List<PostingLog> postingLogs) throws DaoException {
+        final String sql = "COPY shm.posting_log(plan_id, batch_id, from_account_id, to_account_id, " +
+                "creation_time, amount, curr_sym_code, operation, description) FROM STDIN (FORMAT BINARY)";
+        try {
+            Long copied = getJdbcTemplate().execute((ConnectionCallback<Long>) con -> BinaryCopyWriter.copyIn(
+                    con, sql, postingLogs, POSTING_LOG_FIELD_COUNT, (writer, postingLog) -> writer
+                            .writeString(postingLog.getPlanId())
+                            .writeLong(postingLog.getBatchId())
+                            .writeLong(postingLog.getFromAccountId())
+                            .writeLong(postingLog.getToAccountId())
+                            .writeTimestamp(toLocalDateTime(postingLog.getCreationTime()))
+                            .writeLong(postingLog.getAmount())
+                            .writeString(postingLog.getCurrSymCode())
+                            .writeString(postingLog.getOperation().getKey())
+                            .writeString(postingLog.getDescription())
+            ));
+            if (copied == null || copied != postingLogs.size()) {
+                throw new DaoException("Posting log copy returned unexpected row count: " + copied);
+            }
+        } catch (NestedRuntimeException e) {
+            throw new DaoException(e);
+        }
+    }
+
     private Map<Long, List<PostingLog>> fillAbsentValues(Collection<Long> batchIds,
                                                          Map<Long, List<PostingLog>> stateMap) {
         batchIds.forEach(id -> stateMap.putIfAbsent(id, Collections.emptyList()));
         return stateMap;
     }
 
+    // log timestamps are stored in UTC
+    private static LocalDateTime toLocalDateTime(Instant instant) {
+        return LocalDateTime.ofInstant(instant, ZoneOffset.UTC);
+    }
+
     private MapSqlParameterSource createParams(PostingPlanLog planLog, PostingOperation overridableOperation) {
         MapSqlParameterSource params = new MapSqlParameterSource();
         params.addValue("plan_id", planLog.getPlanId());
         params.addValue("last_batch_id", planLog.getLastBatchId());
-        params.addValue("last_access_time", Timestamp.from(planLog.getLastAccessTime()));
+        params.addValue("last_access_time", toLocalDateTime(planLog.getLastAccessTime()));
         params.addValue("last_operation", planLog.getLastOperation().getKey());
         params.addValue("overridable_operation", overridableOperation.getKey());
         return params;
@@ -168,7 +346,7 @@ public class PostingPlanDaoImpl extends NamedParameterJdbcDaoSupport implements
         @Override
         public PostingPlanLog mapRow(ResultSet rs, int rowNum) throws SQLException {
             String planId = rs.getString("plan_id");
-            Instant lastAccessTime = rs.getTimestamp("last_access_time").toInstant();
+            Instant lastAccessTime = rs.getObject("last_access_time", LocalDateTime.class).toInstant(ZoneOffset.UTC);
             PostingOperation lastOperation = PostingOperation.getValueByKey(rs.getString("last_operation"));
             long lastBatchId = rs.getLong("last_batch_id");
             return new PostingPlanLog(planId, lastAccessTime, lastOperation, lastBatchId);
@@ -184,7 +362,7 @@ public class PostingPlanDaoImpl extends NamedParameterJdbcDaoSupport implements
             long batchId = rs.getLong("batch_id");
             long fromAccountId = rs.getLong("from_account_id");
             long toAccountId = rs.getLong("to_account_id");
-            Instant creationTime = rs.getTimestamp("creation_time").toInstant();
+            Instant creationTime = rs.getObject("creation_time", LocalDateTime.class).toInstant(ZoneOffset.UTC);
             long amount = rs.getLong("amount");
             String currSymCode = rs.getString("curr_sym_code");
             PostingOperation operation = PostingOperation.getValueByKey(rs.getString("operation"));
@@ -0,0 +1,75 @@
+package dev.vality.shumway.dao.impl;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.NestedRuntimeException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks replay lag of streaming replica. Lag is rechecked on demand, not more often than check interval,
+ * replica is considered unavailable until the first successful check and after failed ones.
+ * Replica is up to date when it has replayed the WAL written by the primary before the check, otherwise lag
+ * is the age of the last replayed transaction. Replica without running WAL receiver has unknown lag:
+ * it can't catch up, while its received and replayed positions look equal. Receiver status is hidden from roles
+ * without pg_read_all_stats, then running receiver process is enough.
+ */
+public class ReplicationLagMonitor {
+    public static final String LAG_METRIC = "shumway.replica.lag";
+
+    private static final long UNKNOWN_LAG = Long.MAX_VALUE;
+    private static final String PRIMARY_LSN_SQL = "select pg_current_wal_lsn()::text";
+    private static final String LAG_SQL = """
+            select case
+                when not pg_is_in_recovery() then 0
+                when not exists (select 1 from pg_stat_wal_receiver
+                                 where coalesce(status, 'streaming') = 'streaming') then null
+                when pg_last_wal_replay_lsn() >= ?::pg_lsn then 0
+                else (extract(epoch from now() - pg_last_xact_replay_timestamp()) * 1000)::bigint
+            end""";
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private final JdbcTemplate primaryJdbcTemplate;
+    private final JdbcTemplate jdbcTemplate;
+    private final long maxLagMs;
+    private final long checkIntervalMs;
+    private final AtomicLong nextCheckTime = new AtomicLong();
+    private volatile long lagMs = UNKNOWN_LAG;
+
+    public ReplicationLagMonitor(DataSource primaryDataSource, DataSource replicaDataSource, long maxLagMs,
+                                 long checkIntervalMs, MeterRegistry meterRegistry) {
+        this.primaryJdbcTemplate = new JdbcTemplate(primaryDataSource);
+        this.jdbcTemplate = new JdbcTemplate(replicaDataSource);
+        this.maxLagMs = maxLagMs;
+        this.checkIntervalMs = checkIntervalMs;
+        Gauge.builder(LAG_METRIC, this, monitor -> monitor.lagMs == UNKNOWN_LAG ? Double.NaN : monitor.lagMs)
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+    }
+
+    public boolean isReplicaAvailable() {
+        long now = System.currentTimeMillis();
+        long nextCheck = nextCheckTime.get();
+        if (now >= nextCheck && nextCheckTime.compareAndSet(nextCheck, now + checkIntervalMs)) {
+            lagMs = checkLag();
+        }
+        return lagMs <= maxLagMs;
+    }
+
+    private long checkLag() {
+        try {
+            String primaryLsn = primaryJdbcTemplate.queryForObject(PRIMARY_LSN_SQL, String.class);
+            Long lag = jdbcTemplate.queryForObject(LAG_SQL, Long.class, primaryLsn);
+            log.debug("Replica lag is {} ms", lag);
+            return lag == null ? UNKNOWN_LAG : lag;
+        } catch (NestedRuntimeException e) {
+            log.warn("Failed to check replica lag", e);
+            return UNKNOWN_LAG;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package dev.vality.shumway.dao.impl;
+
+import dev.vality.shumway.dao.AccountReplicaDao;
+import dev.vality.shumway.dao.DaoException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Routes reads to replica while its lag is acceptable, falls back to primary otherwise,
+ * on replica failure or when nothing is found on replica.
+ */
+public class RoutingAccountReplicaDao implements AccountReplicaDao {
+    public static final String ROUTE_METRIC = "shumway.replica.route";
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private final AccountReplicaDao primaryDao;
+    private final AccountReplicaDao replicaDao;
+    private final ReplicationLagMonitor lagMonitor;
+    private final Counter primaryCounter;
+    private final Counter replicaCounter;
+
+    public RoutingAccountReplicaDao(AccountReplicaDao primaryDao, AccountReplicaDao replicaDao,
+                                    ReplicationLagMonitor lagMonitor, MeterRegistry meterRegistry) {
+        this.primaryDao = primaryDao;
+        this.replicaDao = replicaDao;
+        this.lagMonitor = lagMonitor;
+        this.primaryCounter = Counter.builder(ROUTE_METRIC).tag("target", "primary").register(meterRegistry);
+        this.replicaCounter = Counter.builder(ROUTE_METRIC).tag("target", "replica").register(meterRegistry);
+    }
+
+    @Override
+    public Long getAccountBalanceDiff(long id, LocalDateTime fromTime, LocalDateTime toTime) throws DaoException {
+        return route(dao -> dao.getAccountBalanceDiff(id, fromTime, toTime));
+    }
+
+    @Override
+    public Long getAccountBalance(long id, LocalDateTime dateTime) throws DaoException {
+        return route(dao -> dao.getAccountBalance(id, dateTime));
+    }
+
+    @Override
+    public Map<Long, Long> getAccountBalanceDiffs(Collection<Long> ids, LocalDateTime fromTime,
+                                                  LocalDateTime toTime) throws DaoException {
+        return routeBatch(ids, (dao, accountIds) -> dao.getAccountBalanceDiffs(accountIds, fromTime, toTime));
+    }
+
+    @Override
+    public Map<Long, Long> getAccountBalances(Collection<Long> ids, LocalDateTime dateTime) throws DaoException {
+        return routeBatch(ids, (dao, accountIds) -> dao.getAccountBalances(accountIds, dateTime));
+    }
+
+    private Map<Long, Long> routeBatch(Collection<Long> ids,
+                                       BiFunction<AccountReplicaDao, Collection<Long>, Map<Long, Long>> query) {
+        Map<Long, Long> result = null;
+        if (lagMonitor.isReplicaAvailable()) {
+            try {
+                result = query.apply(replicaDao, ids);
+                replicaCounter.increment();
+            } catch (DaoException e) {
+                log.warn("Failed to read from replica, fallback to primary", e);
+            }
+        }
+        if (result == null) {
+            primaryCounter.increment();
+            return query.apply(primaryDao, ids);
+        }
+        Map<Long, Long> replicaResult = result;
+        Set<Long> missingIds = ids.stream()
+                .filter(id -> !replicaResult.containsKey(id))
+                .collect(Collectors.toSet());
+        if (missingIds.isEmpty()) {
+            return result;
+        }
+        // accounts may be created within replica lag, so they're looked up on primary
+        primaryCounter.increment();
+        Map<Long, Long> merged = new HashMap<>(result);
+        merged.putAll(query.apply(primaryDao, missingIds));
+        return merged;
+    }
+
+    private <T> T route(Function<AccountReplicaDao, T> query) {
+        if (lagMonitor.isReplicaAvailable()) {
+            try {
+                T result = query.apply(replicaDao);
+                // account may be created within replica lag, so it's looked up on primary
+                if (result != null) {
+                    replicaCounter.increment();
+                    return result;
+                }
+            } catch (DaoException e) {
+                log.warn("Failed to read from replica, fallback to primary", e);
+            }
+        }
+        primaryCounter.increment();
+        return query.apply(primaryDao);
+    }
+}
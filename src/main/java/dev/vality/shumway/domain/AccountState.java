@@ -6,15 +6,25 @@ public class AccountState {
     private final long ownAmount;
     private final long minAccumulatedDiff;
     private final long maxAccumulatedDiff;
+    private final long version;
 
     public AccountState() {
         this(0, 0, 0);
     }
 
     public AccountState(long ownAccumulatedAmount, long minAccumulatedDiff, long maxAccumulatedDiff) {
+        this(ownAccumulatedAmount, minAccumulatedDiff, maxAccumulatedDiff, 0);
+    }
+
+    /**
+     * @param version Version of stored state (shm.account_state), 0 if not stored or not read.
+     *                It's not a part of the state value, so it's ignored by equals
+     */
+    public AccountState(long ownAccumulatedAmount, long minAccumulatedDiff, long maxAccumulatedDiff, long version) {
         this.ownAmount = ownAccumulatedAmount;
         this.minAccumulatedDiff = minAccumulatedDiff;
         this.maxAccumulatedDiff = maxAccumulatedDiff;
+        this.version = version;
     }
 
     public long getOwnAmount() {
@@ -29,6 +39,10 @@ public class AccountState {
         return minAccumulatedDiff;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
     public long getMaxAvailableAmount() {
         return ownAmount + maxAccumulatedDiff;
     }
@@ -37,6 +51,14 @@ public class AccountState {
         return ownAmount + minAccumulatedDiff;
     }
 
+    public AccountState plus(AccountState other) {
+        return new AccountState(
+                ownAmount + other.ownAmount,
+                minAccumulatedDiff + other.minAccumulatedDiff,
+                maxAccumulatedDiff + other.maxAccumulatedDiff
+        );
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -62,6 +84,7 @@ public class AccountState {
                 "ownAmount=" + ownAmount +
                 ", minAccumulatedDiff=" + minAccumulatedDiff +
                 ", maxAccumulatedDiff=" + maxAccumulatedDiff +
+                ", version=" + version +
                 '}';
     }
 }
@@ -0,0 +1,113 @@
+package dev.vality.shumway.domain;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Mapping of striped logical accounts to their physical stripe accounts.
+ * Accounts absent from the mapping are not striped and are backed by themselves.
+ * A plan is served by the stripe chosen by plan id, unless it's pinned to the stripe its holds were written to.
+ */
+public class AccountStripes {
+    public static final AccountStripes EMPTY = new AccountStripes(Collections.emptyMap());
+
+    private final Map<Long, List<Long>> stripes;
+    private final Map<Long, Long> planStripes;
+    private final Map<Long, Long> stripeParents;
+
+    /**
+     * @param stripes logical account id to ordered stripe ids, the first stripe is the logical account itself
+     */
+    public AccountStripes(Map<Long, List<Long>> stripes) {
+        this(stripes, Collections.emptyMap());
+    }
+
+    private AccountStripes(Map<Long, List<Long>> stripes, Map<Long, Long> planStripes) {
+        this.stripes = stripes;
+        this.planStripes = planStripes;
+        this.stripeParents = new HashMap<>();
+        stripes.forEach((accountId, accountStripes) -> accountStripes.stream()
+                .skip(1)
+                .forEach(stripeId -> stripeParents.put(stripeId, accountId)));
+    }
+
+    /**
+     * @param planStripeIds stripes, which already serve the plan
+     * @return Stripes, which resolve accounts to the stripes serving the plan (the first one in stripe order)
+     */
+    public AccountStripes withPlanStripes(Set<Long> planStripeIds) {
+        Map<Long, Long> pinned = new HashMap<>();
+        stripes.forEach((accountId, accountStripes) -> accountStripes.stream()
+                .filter(planStripeIds::contains)
+                .findFirst()
+                .ifPresent(stripeId -> pinned.put(accountId, stripeId)));
+        return new AccountStripes(stripes, pinned);
+    }
+
+    public boolean isEmpty() {
+        return stripes.isEmpty();
+    }
+
+    public Set<Long> getStripedIds() {
+        return stripes.keySet();
+    }
+
+    public boolean isStriped(long accountId) {
+        return stripes.containsKey(accountId);
+    }
+
+    /**
+     * @return true if account is an additional stripe of striped account, not the logical account itself
+     */
+    public boolean isStripe(long accountId) {
+        return stripeParents.containsKey(accountId);
+    }
+
+    public List<Long> getStripes(long accountId) {
+        return stripes.getOrDefault(accountId, List.of(accountId));
+    }
+
+    /**
+     * @return Stripe account id, that serves referred plan for logical account
+     */
+    public long resolve(long accountId, String planId) {
+        List<Long> accountStripes = stripes.get(accountId);
+        if (accountStripes == null) {
+            return accountId;
+        }
+        Long planStripeId = planStripes.get(accountId);
+        if (planStripeId != null) {
+            return planStripeId;
+        }
+        return accountStripes.get(Math.floorMod(planId.hashCode(), accountStripes.size()));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof AccountStripes)) {
+            return false;
+        }
+        AccountStripes that = (AccountStripes) o;
+        return Objects.equals(stripes, that.stripes) && Objects.equals(planStripes, that.planStripes);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(stripes, planStripes);
+    }
+
+    @Override
+    public String toString() {
+        return "AccountStripes{" +
+                "stripes=" + stripes +
+                ", planStripes=" + planStripes +
+                '}';
+    }
+}
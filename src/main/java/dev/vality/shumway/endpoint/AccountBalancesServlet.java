@@ -0,0 +1,79 @@
+package dev.vality.shumway.endpoint;
+
+import com.fasterxml.jackson.core.JacksonException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.vality.geck.common.util.TypeUtil;
+import dev.vality.shumway.handler.AccounterHandler;
+import dev.vality.woody.api.flow.error.WUnavailableResultException;
+import org.apache.thrift.TException;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.time.DateTimeException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Batch balance lookups for reporting, which are not a part of the thrift protocol.
+ * Accepts POST with JSON body {"ids": [...], "dateTime": "..."} for balances at the time
+ * or {"ids": [...], "fromTime": "...", "toTime": "..."} for balance diffs over the range
+ * and responds with JSON object of amounts by account id, not found accounts are omitted.
+ * Requests without required fields or with malformed timestamps are rejected with 400.
+ */
+@WebServlet("/accounter/balances")
+public class AccountBalancesServlet extends HttpServlet {
+
+    @Autowired
+    private AccounterHandler accounterHandler;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        BalancesRequest request;
+        try {
+            request = objectMapper.readValue(req.getInputStream(), BalancesRequest.class);
+        } catch (JacksonException e) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getOriginalMessage());
+            return;
+        }
+        boolean range = request.fromTime() != null && request.toTime() != null;
+        if (request.ids() == null || (request.dateTime() != null) == range) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "ids and either dateTime or fromTime and toTime " +
+                    "are required");
+            return;
+        }
+        // timestamps are parsed by the service the same way, so only valid ones reach it
+        for (String time : range ? List.of(request.fromTime(), request.toTime()) : List.of(request.dateTime())) {
+            try {
+                TypeUtil.stringToLocalDateTime(time);
+            } catch (DateTimeException | IllegalArgumentException e) {
+                resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid timestamp: " + time);
+                return;
+            }
+        }
+        Map<Long, Long> balances;
+        try {
+            balances = range
+                    ? accounterHandler.getAccountBalanceDiffs(request.ids(), request.fromTime(), request.toTime())
+                    : accounterHandler.getAccountBalances(request.ids(), request.dateTime());
+        } catch (WUnavailableResultException e) {
+            resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
+        } catch (TException e) {
+            resp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            return;
+        }
+        resp.setContentType("application/json");
+        objectMapper.writeValue(resp.getOutputStream(), balances);
+    }
+
+    record BalancesRequest(List<Long> ids, String dateTime, String fromTime, String toTime) {
+    }
+}
@@ -11,9 +11,13 @@ import dev.vality.damsel.accounter.PostingPlanChange;
 import dev.vality.damsel.accounter.PostingPlanLog;
 import dev.vality.shumway.dao.DaoException;
 import dev.vality.shumway.domain.AccountState;
+import dev.vality.shumway.domain.AccountStripes;
 import dev.vality.shumway.domain.PostingLog;
 import dev.vality.shumway.domain.PostingOperation;
 import dev.vality.shumway.domain.StatefulAccount;
+import dev.vality.shumway.handler.PostingMetrics.Phase;
+import dev.vality.shumway.handler.PostingMetrics.Phases;
+import dev.vality.shumway.service.AccountDiffs;
 import dev.vality.shumway.service.AccountService;
 import dev.vality.shumway.service.PostingPlanService;
 import dev.vality.woody.api.flow.error.WUnavailableResultException;
@@ -21,12 +25,17 @@ import org.apache.thrift.TException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.lang.Nullable;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import static dev.vality.shumway.handler.ProtocolConverter.convertFromDomainAccount;
@@ -37,24 +46,58 @@ public class AccounterHandler implements AccounterSrv.Iface {
     private final Logger log = LoggerFactory.getLogger(this.getClass());
 
     private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate snapshotTemplate;
 
     private final AccountService accountService;
     private final PostingPlanService planService;
+    private final TransactionRetrier transactionRetrier;
+    private final PostingMetrics postingMetrics;
+    private final IdempotencyCache idempotencyCache;
+    private final FinalizedPlanCache finalizedPlanCache;
+    private final boolean serverSideEnabled;
 
     public AccounterHandler(
             AccountService accountService,
             PostingPlanService planService,
             TransactionTemplate transactionTemplate
+    ) {
+        this(accountService, planService, transactionTemplate, TransactionRetrier.noRetry(), PostingMetrics.noop(),
+                IdempotencyCache.disabled(), FinalizedPlanCache.disabled(), false);
+    }
+
+    public AccounterHandler(
+            AccountService accountService,
+            PostingPlanService planService,
+            TransactionTemplate transactionTemplate,
+            TransactionRetrier transactionRetrier,
+            PostingMetrics postingMetrics,
+            IdempotencyCache idempotencyCache,
+            FinalizedPlanCache finalizedPlanCache,
+            boolean serverSideEnabled
     ) {
         this.accountService = accountService;
         this.planService = planService;
         this.transactionTemplate = transactionTemplate;
+        this.snapshotTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager(),
+                transactionTemplate);
+        this.snapshotTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.snapshotTemplate.setReadOnly(true);
+        this.transactionRetrier = transactionRetrier;
+        this.postingMetrics = postingMetrics;
+        this.idempotencyCache = idempotencyCache;
+        this.finalizedPlanCache = finalizedPlanCache;
+        this.serverSideEnabled = serverSideEnabled;
     }
 
     public static boolean isFinalOperation(PostingOperation operation) {
         return operation != PostingOperation.HOLD;
     }
 
+    /**
+     * Affected striped accounts report the state of the stripe serving the plan plus other stripes,
+     * which are read afterwards without locks (see {@link AccountService#mergeStripeStates}),
+     * so their amounts can be inconsistent across stripes. The same applies to commit and rollback.
+     */
     @Override
     public PostingPlanLog hold(PostingPlanChange planChange) throws TException {
         return doSafeOperation(new PostingPlan(planChange.getId(), List.of(planChange.getBatch())),
@@ -72,10 +115,29 @@ public class AccounterHandler implements AccounterSrv.Iface {
     }
 
     protected PostingPlanLog doSafeOperation(PostingPlan postingPlan, PostingOperation operation) throws TException {
-        Map<Long, StatefulAccount> affectedDomainStatefulAccounts;
+        Map<Long, StatefulAccount> affectedDomainStatefulAccounts = null;
+        Phases phases = postingMetrics.start(operation);
         try {
-            affectedDomainStatefulAccounts =
-                    transactionTemplate.execute(transactionStatus -> safePostingOperation(postingPlan, operation));
+            PostingPlanLog cachedPostingPlanLog = idempotencyCache.get(postingPlan, operation);
+            if (cachedPostingPlanLog != null) {
+                log.info("This is duplicate request: {}, plan: {} [cached]", operation, postingPlan.getId());
+                phases.setDuplicate(true);
+                return cachedPostingPlanLog;
+            }
+            if (!isFinalOperation(operation)) {
+                affectedDomainStatefulAccounts = transactionRetrier.execute(() -> snapshotTemplate.execute(
+                        transactionStatus -> duplicateHoldOperation(postingPlan, phases)));
+            }
+            if (serverSideEnabled && affectedDomainStatefulAccounts == null) {
+                affectedDomainStatefulAccounts = transactionRetrier.execute(() -> transactionTemplate.execute(
+                        transactionStatus -> serverSidePostingOperation(postingPlan, operation, transactionStatus,
+                                phases)));
+            }
+            if (affectedDomainStatefulAccounts == null) {
+                affectedDomainStatefulAccounts = transactionRetrier.execute(() -> transactionTemplate.execute(
+                        transactionStatus -> safePostingOperation(postingPlan, operation, phases)));
+            }
+            long conversionStart = phases.begin();
             Map<Long, Account> affectedProtocolAccounts = affectedDomainStatefulAccounts.values()
                     .stream()
                     .collect(Collectors.toMap(
@@ -83,6 +145,8 @@ public class AccounterHandler implements AccounterSrv.Iface {
                             ProtocolConverter::convertFromDomainAccount
                     ));
             PostingPlanLog protocolPostingPlanLog = new PostingPlanLog(affectedProtocolAccounts);
+            phases.end(Phase.RESULT_CONVERSION, conversionStart);
+            idempotencyCache.put(postingPlan, operation, protocolPostingPlanLog);
             log.info("PostingPlanLog of affected accounts: {}", protocolPostingPlanLog);
             return protocolPostingPlanLog;
         } catch (Exception e) {
@@ -94,25 +158,116 @@ public class AccounterHandler implements AccounterSrv.Iface {
             } else {
                 throw e;
             }
+        } finally {
+            phases.publish();
+        }
+    }
+
+    /**
+     * Answers duplicate hold of tracked plan from read-only snapshot without plan and account locks.
+     * Received batch is equal to the held one by digest, which is saved for validated batches only,
+     * and the plan isn't finalized in the snapshot, so its hold logs are there.
+     *
+     * @return Affected accounts, null if it's not a duplicate hold of tracked plan
+     * and must be processed by regular flow
+     */
+    @Nullable
+    private Map<Long, StatefulAccount> duplicateHoldOperation(PostingPlan postingPlan, Phases phases) {
+        PostingBatch batch = postingPlan.getBatchList().get(0);
+        if (!batch.isSetPostings()) {
+            return null;
+        }
+        long phaseStart = phases.begin();
+        byte[] heldBatchDigest = planService.getHeldBatchDigest(postingPlan.getId(), batch.getId());
+        boolean duplicate = heldBatchDigest != null && Arrays.equals(heldBatchDigest, PostingDigest.batch(batch));
+        phases.end(Phase.SAVED_POSTINGS_READ, phaseStart);
+        if (!duplicate) {
+            return null;
+        }
+        log.info("This is duplicate request: {}, plan: {} [snapshot]", PostingOperation.HOLD, postingPlan.getId());
+        phases.setDuplicate(true);
+        phaseStart = phases.begin();
+        AccountStripes stripes = accountService.pinPlanStripes(postingPlan.getId(),
+                accountService.getAccountStripes(postingPlan.getBatchList()));
+        Map<Long, StatefulAccount> savedDomainStatefulAcc = accountService.getStatefulAccounts(
+                postingPlan.getBatchList(),
+                postingPlan.getId(),
+                false,
+                stripes
+        );
+        Map<Long, AccountState> resultAccStates = savedDomainStatefulAcc.values().stream()
+                .collect(Collectors.toMap(dev.vality.shumway.domain.Account::getId,
+                        StatefulAccount::getAccountState));
+        phases.end(Phase.ACCOUNT_STATE_READ, phaseStart);
+        return AccountService.getStatefulAccounts(savedDomainStatefulAcc,
+                () -> accountService.mergeStripeStates(resultAccStates, postingPlan.getId(), stripes));
+    }
+
+    /**
+     * Executes posting operation with single database call.
+     *
+     * @return Affected accounts, null if operation is not applied (transaction is marked as rollback only)
+     * and must be processed by {@link #safePostingOperation(PostingPlan, PostingOperation, Phases)}
+     */
+    @Nullable
+    private Map<Long, StatefulAccount> serverSidePostingOperation(
+            PostingPlan postingPlan,
+            PostingOperation operation,
+            TransactionStatus transactionStatus,
+            Phases phases
+    ) {
+        boolean finalOp = isFinalOperation(operation);
+        try {
+            log.info("New {} request, plan: {} [server-side]", operation, postingPlan);
+            long phaseStart = phases.begin();
+            AccounterValidator.validateStaticPlanBatches(postingPlan, finalOp);
+            AccounterValidator.validateStaticPostings(postingPlan);
+            if (!accountService.getAccountStripes(postingPlan.getBatchList()).isEmpty()) {
+                log.info("Plan {} refers striped accounts, server-side processing is skipped", postingPlan.getId());
+                return null;
+            }
+            dev.vality.shumway.domain.PostingPlanLog receivedDomainPlanLog =
+                    ProtocolConverter.convertToDomainPlan(postingPlan, operation);
+            List<PostingLog> receivedDomainPostingLogs = convertToDomainPostings(postingPlan, receivedDomainPlanLog);
+            phases.end(Phase.STATIC_VALIDATION, phaseStart);
+
+            phaseStart = phases.begin();
+            Map<Long, StatefulAccount> result =
+                    planService.executePostingOperation(receivedDomainPlanLog, receivedDomainPostingLogs);
+            phases.end(Phase.SERVER_SIDE_EXECUTION, phaseStart);
+            if (result == null) {
+                log.info("Plan {} is not applied server-side, processing with regular flow", postingPlan.getId());
+                transactionStatus.setRollbackOnly();
+            } else {
+                log.info("Result account state is {}", result);
+            }
+            return result;
+        } catch (TException e) {
+            throw new RuntimeException(e);
         }
     }
 
     private Map<Long, StatefulAccount> safePostingOperation(
             PostingPlan postingPlan,
-            PostingOperation operation
+            PostingOperation operation,
+            Phases phases
     ) {
         boolean finalOp = isFinalOperation(operation);
         try {
             log.info("New {} request, plan: {}", operation, postingPlan);
+            long phaseStart = phases.begin();
             AccounterValidator.validateStaticPlanBatches(postingPlan, finalOp);
             AccounterValidator.validateStaticPostings(postingPlan);
             dev.vality.shumway.domain.PostingPlanLog receivedDomainPlanLog =
                     ProtocolConverter.convertToDomainPlan(postingPlan, operation);
+            phases.end(Phase.STATIC_VALIDATION, phaseStart);
 
+            phaseStart = phases.begin();
             Map.Entry<dev.vality.shumway.domain.PostingPlanLog, dev.vality.shumway.domain.PostingPlanLog>
                     postingPlanLogPair = finalOp
                     ? planService.updatePostingPlan(receivedDomainPlanLog, operation)
                     : planService.createOrUpdatePostingPlan(receivedDomainPlanLog);
+            phases.end(Phase.PLAN_UPSERT, phaseStart);
             dev.vality.shumway.domain.PostingPlanLog oldDomainPlanLog = postingPlanLogPair.getKey();
             dev.vality.shumway.domain.PostingPlanLog currDomainPlanLog = postingPlanLogPair.getValue();
             log.info("Old plan log is {}, curr plan log is {}", oldDomainPlanLog, currDomainPlanLog);
@@ -122,70 +277,176 @@ public class AccounterHandler implements AccounterSrv.Iface {
             if (currDomainPlanLog == null) {
                 throw AccounterValidator.validatePlanNotFixedResult(receivedDomainPlanLog, oldDomainPlanLog, !finalOp);
             } else {
-                Map<Long, List<PostingLog>> savedDomainPostingLogs =
-                        planService.getPostingLogs(currDomainPlanLog.getPlanId(), prevOperation);
+                phaseStart = phases.begin();
+                Map<Long, byte[]> receivedBatchDigests = PostingDigest.batches(postingPlan);
+                Map<Long, byte[]> savedBatchDigests =
+                        getSavedBatchDigests(currDomainPlanLog.getPlanId(), oldDomainPlanLog, receivedBatchDigests,
+                                finalOp);
+                // saved postings are read only to report the mismatch or if plan holds are not tracked by digests
+                boolean savedDigestsMatched = savedBatchDigests != null
+                        && AccounterValidator.matchesSavedDigests(receivedBatchDigests, savedBatchDigests, finalOp);
+                Map<Long, List<PostingLog>> savedDomainPostingLogs = savedDigestsMatched
+                        ? null
+                        : planService.getPostingLogs(currDomainPlanLog.getPlanId(), prevOperation);
+                phases.end(Phase.SAVED_POSTINGS_READ, phaseStart);
 
-                AccounterValidator.validatePlanBatches(postingPlan, savedDomainPostingLogs, finalOp);
+                phaseStart = phases.begin();
+                Set<Long> savedBatchIds;
+                if (savedDigestsMatched) {
+                    savedBatchIds = savedBatchDigests.keySet();
+                } else {
+                    AccounterValidator.validatePlanBatches(postingPlan, savedDomainPostingLogs, finalOp);
+                    savedBatchIds = savedDomainPostingLogs.keySet();
+                }
 
                 //generally - valid result is single received batch for new hold and empty for any commit or rollback
                 List<PostingBatch> newProtocolBatches = postingPlan.getBatchList()
                         .stream()
-                        .filter(batch -> !savedDomainPostingLogs.containsKey(batch.getId()))
+                        .filter(batch -> !savedBatchIds.contains(batch.getId()))
                         .collect(Collectors.toList());
+                phases.end(Phase.PLAN_VALIDATION, phaseStart);
+                AccountStripes referredStripes = accountService.getAccountStripes(postingPlan.getBatchList());
+                AccounterValidator.validateStripes(postingPlan.getBatchList(), referredStripes);
+                // plan stays on the stripes its holds were written to
+                AccountStripes stripes = oldDomainPlanLog == null
+                        ? referredStripes
+                        : accountService.pinPlanStripes(postingPlan.getId(), referredStripes);
                 Map<Long, AccountState> resultAccStates;
                 Map<Long, StatefulAccount> savedDomainStatefulAcc;
                 if (prevOperation == operation && newProtocolBatches.isEmpty()) {
                     log.info("This is duplicate request: {}", operation);
+                    phases.setDuplicate(true);
+                    phaseStart = phases.begin();
                     savedDomainStatefulAcc = accountService.getStatefulAccounts(
                             postingPlan.getBatchList(),
                             postingPlan.getId(),
-                            isFinalOperation(operation)
+                            isFinalOperation(operation),
+                            stripes
                     );
                     resultAccStates = savedDomainStatefulAcc.values().stream()
                             .collect(Collectors.toMap(dev.vality.shumway.domain.Account::getId,
                                     StatefulAccount::getAccountState));
+                    phases.end(Phase.ACCOUNT_STATE_READ, phaseStart);
                 } else {
-                    savedDomainStatefulAcc = accountService.getStatefulExclusiveAccounts(postingPlan.getBatchList());
-                    AccounterValidator.validateAccounts(newProtocolBatches, savedDomainStatefulAcc);
+                    phases.setDuplicate(false);
+                    // account attributes never change, so postings are validated before taking locks
+                    phaseStart = phases.begin();
+                    AccounterValidator.validateAccounts(newProtocolBatches,
+                            accountService.getAccounts(newProtocolBatches));
+                    phases.end(Phase.ACCOUNT_VALIDATION, phaseStart);
+
+                    phaseStart = phases.begin();
+                    savedDomainStatefulAcc = accountService.getStatefulExclusiveAccounts(
+                            postingPlan.getBatchList(),
+                            postingPlan.getId(),
+                            stripes
+                    );
+                    phases.end(Phase.ACCOUNT_LOCK, phaseStart);
                     log.debug("Saving posting batches: {}", newProtocolBatches);
-                    List<PostingLog> newDomainPostingLogs = postingPlan.getBatchList()
-                            .stream()
-                            .flatMap(batch -> batch.getPostings().stream().map(posting -> ProtocolConverter
-                                    .convertToDomainPosting(posting, batch, currDomainPlanLog)))
-                            .collect(Collectors.toList());
-                    log.info("New posting logs are {}", newDomainPostingLogs);
-                    planService.addPostingLogs(newDomainPostingLogs);
-                    if (PostingOperation.HOLD.equals(operation)) {
-                        List<PostingLog> savedDomainPostingLogList = savedDomainPostingLogs.values().stream()
-                                .flatMap(Collection::stream)
-                                .collect(Collectors.toList());
-                        resultAccStates = accountService.holdAccounts(
+                    phaseStart = phases.begin();
+                    if (finalOp) {
+                        // validated postings are equal to the held ones, so they are referred, not copied
+                        planService.addPlanFinalization(currDomainPlanLog);
+                        phases.end(Phase.POSTING_INSERT, phaseStart);
+
+                        phaseStart = phases.begin();
+                        // tracked plan has diffs of all held postings
+                        AccountDiffs planDiffs = savedDigestsMatched
+                                ? planService.getPlanAccountDiffs(postingPlan.getId())
+                                : AccountDiffs.of(convertToDomainPostings(postingPlan, currDomainPlanLog));
+                        resultAccStates = accountService.commitOrRollback(
+                                operation,
                                 postingPlan.getId(),
-                                postingPlan.getBatchList().get(0),
-                                newDomainPostingLogs,
-                                savedDomainPostingLogList,
-                                savedDomainStatefulAcc
+                                planDiffs,
+                                savedDomainStatefulAcc,
+                                stripes
                         );
+                        planService.deletePlanSummary(postingPlan.getId());
                     } else {
-                        resultAccStates = accountService.commitOrRollback(
-                                operation,
+                        PostingBatch newBatch = postingPlan.getBatchList().get(0);
+                        List<PostingLog> newDomainPostingLogs = convertToDomainPostings(postingPlan, currDomainPlanLog);
+                        log.info("New posting logs are {}", newDomainPostingLogs);
+                        // saved diffs are read before the summary of new batch is added to them
+                        AccountDiffs savedDiffs;
+                        if (savedDomainPostingLogs != null) {
+                            savedDiffs = AccountDiffs.of(savedDomainPostingLogs.values().stream()
+                                    .flatMap(Collection::stream)
+                                    .collect(Collectors.toList()));
+                        } else if (oldDomainPlanLog == null) {
+                            savedDiffs = new AccountDiffs();
+                        } else {
+                            savedDiffs = planService.getPlanAccountDiffs(postingPlan.getId());
+                        }
+                        planService.addPostingLogs(newDomainPostingLogs);
+                        planService.addPlanBatchSummary(postingPlan.getId(), newBatch.getId(),
+                                receivedBatchDigests.get(newBatch.getId()), oldDomainPlanLog == null,
+                                AccountDiffs.of(newDomainPostingLogs));
+                        phases.end(Phase.POSTING_INSERT, phaseStart);
+
+                        phaseStart = phases.begin();
+                        resultAccStates = accountService.holdAccounts(
                                 postingPlan.getId(),
+                                newBatch,
                                 newDomainPostingLogs,
-                                savedDomainStatefulAcc
+                                savedDiffs,
+                                savedDomainStatefulAcc,
+                                stripes
                         );
                     }
+                    phases.end(Phase.ACCOUNT_LOG_INSERT, phaseStart);
                 }
                 log.info("Result account state is {}", resultAccStates);
-                return AccountService.getStatefulAccounts(savedDomainStatefulAcc, () -> resultAccStates);
+                return AccountService.getStatefulAccounts(savedDomainStatefulAcc,
+                        () -> accountService.mergeStripeStates(resultAccStates, postingPlan.getId(), stripes));
             }
         } catch (TException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * @return Digests of saved batches, null if plan holds are not tracked by digests
+     */
+    @Nullable
+    private Map<Long, byte[]> getSavedBatchDigests(
+            String planId,
+            @Nullable dev.vality.shumway.domain.PostingPlanLog oldDomainPlanLog,
+            Map<Long, byte[]> receivedBatchDigests,
+            boolean finalOp
+    ) {
+        if (oldDomainPlanLog == null) {
+            return Collections.emptyMap();
+        }
+        byte[] planDigest = planService.getPlanDigest(planId);
+        if (planDigest == null) {
+            return null;
+        }
+        if (finalOp && Arrays.equals(PostingDigest.plan(receivedBatchDigests), planDigest)) {
+            // received plan is the held one, batch digests are equal
+            return receivedBatchDigests;
+        }
+        return planService.getBatchDigests(planId);
+    }
+
+    private static List<PostingLog> convertToDomainPostings(
+            PostingPlan postingPlan,
+            dev.vality.shumway.domain.PostingPlanLog domainPlanLog
+    ) {
+        return postingPlan.getBatchList()
+                .stream()
+                .flatMap(batch -> batch.getPostings().stream().map(posting -> ProtocolConverter
+                        .convertToDomainPosting(posting, batch, domainPlanLog)))
+                .collect(Collectors.toList());
+    }
+
     @Override
     public PostingPlan getPlan(String planId) throws TException {
         log.info("New GetPlan request, id: {}", planId);
+        PostingPlan cachedPlan = finalizedPlanCache.get(planId);
+        if (cachedPlan != null) {
+            log.info("Response: {} [cached]", cachedPlan);
+            return cachedPlan;
+        }
 
         dev.vality.shumway.domain.PostingPlanLog domainPostingPlan;
         try {
@@ -215,6 +476,9 @@ public class AccounterHandler implements AccounterSrv.Iface {
                 .map(entry -> convertFromDomainToBatch(entry.getKey(), entry.getValue()))
                 .collect(Collectors.toList());
         PostingPlan protocolPlan = new PostingPlan(planId, protocolBatchList);
+        if (isFinalOperation(domainPostingPlan.getLastOperation())) {
+            finalizedPlanCache.put(protocolPlan);
+        }
         log.info("Response: {}", protocolPlan);
         return protocolPlan;
     }
@@ -277,6 +541,48 @@ public class AccounterHandler implements AccounterSrv.Iface {
         }
     }
 
+    /**
+     * Batch variant of {@link #getAccountBalanceDiff(long, String, String)}, not a part of the thrift protocol,
+     * served by {@link dev.vality.shumway.endpoint.AccountBalancesServlet}.
+     *
+     * @return Balance diffs by account id, not found accounts are omitted
+     */
+    public Map<Long, Long> getAccountBalanceDiffs(List<Long> ids, String fromTime, String toTime) throws TException {
+        log.info("New GetAccountBalanceDiffs request, ids: {}", ids.size());
+        try {
+            return accountService.getAccountAvailableAmounts(ids, fromTime, toTime);
+        } catch (Exception e) {
+            log.error("Failed to get account balance diffs", e);
+            if (e instanceof DaoException) {
+                throw new WUnavailableResultException(e);
+            }
+            throw new TException(e);
+        }
+    }
+
+    /**
+     * Batch variant of {@link #getAccountBalance(long, String)}, not a part of the thrift protocol,
+     * served by {@link dev.vality.shumway.endpoint.AccountBalancesServlet}.
+     *
+     * @return Balances by account id, not found accounts are omitted
+     */
+    public Map<Long, Long> getAccountBalances(List<Long> ids, String dateTime) throws TException {
+        log.info("New GetAccountBalances request, ids: {}", ids.size());
+        try {
+            return accountService.getAccountAvailableAmounts(ids, dateTime);
+        } catch (Exception e) {
+            log.error("Failed to get account balances", e);
+            if (e instanceof DaoException) {
+                throw new WUnavailableResultException(e);
+            }
+            throw new TException(e);
+        }
+    }
+
+    /**
+     * Striped account amounts are summed over its stripes without locks
+     * (see {@link AccountService#getStatefulAccount}), so they can be inconsistent across stripes.
+     */
     @Override
     public Account getAccountByID(long id) throws TException {
         log.info("New GetAccountById request, id: {}", id);
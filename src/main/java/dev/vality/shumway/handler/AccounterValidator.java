@@ -8,14 +8,15 @@ import dev.vality.damsel.base.InvalidRequest;
 import dev.vality.shumway.domain.PostingLog;
 import dev.vality.shumway.domain.PostingOperation;
 import dev.vality.shumway.domain.Account;
+import dev.vality.shumway.domain.AccountStripes;
 import dev.vality.shumway.domain.PostingPlanLog;
-import dev.vality.shumway.domain.StatefulAccount;
 import org.apache.thrift.TException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.StringUtils;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -25,7 +26,6 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.function.BiConsumer;
-import java.util.function.BiPredicate;
 import java.util.stream.Collectors;
 
 public class AccounterValidator {
@@ -36,6 +36,8 @@ public class AccounterValidator {
     public static final String RECEIVED_POSTING_NOT_FOUND_ERR = "Received posting not found in batch: %d";
     public static final String SRC_ACC_NOT_FOUND_ERR = "Source account not found by id: %d in batch: %d";
     public static final String DST_ACC_NOT_FOUND_ERR = "Target account not found by id: %d in batch: %d";
+    public static final String ACC_STRIPE_ERR = "Account %d is a stripe of striped account, which must be referred " +
+            "instead in batch: %d";
     public static final String ACC_CURR_CODE_NOT_EQUAL_ERR =
             "Account (%d) currency code is not equal: expected: %s, actual: %s in batch: %d";
     public static final String POSTING_PLAN_STATE_CHANGE_ERR = "Unable to change plan state: %s from: %s to %s";
@@ -47,24 +49,6 @@ public class AccounterValidator {
     public static final String POSTING_BATCH_COUNT_VIOLATION = "Too many batches in posting plan (%s)";
     public static final String POSTING_BATCH_ID_VIOLATION = "Batch has id %d lower than saved id: %d";
 
-    private static final BiPredicate<Posting, PostingLog> postingComparator = (posting, postingLog) -> {
-        if (posting.getAmount() != postingLog.getAmount()) {
-            return false;
-        } else if (posting.getFromId() != postingLog.getFromAccountId()) {
-            return false;
-        } else if (posting.getToId() != postingLog.getToAccountId()) {
-            return false;
-        } else if (!posting.getCurrencySymCode().equals(postingLog.getCurrSymCode())) {
-            return false;
-        } else {
-            return posting.getDescription().equals(postingLog.getDescription());
-        }
-    };
-    private static final BiPredicate<Collection<Posting>, PostingLog> containsPostingLog = (postings, postingLog) ->
-            postings.stream().anyMatch(posting -> postingComparator.test(posting, postingLog));
-    private static final BiPredicate<Collection<PostingLog>, Posting> containsPosting = (postingLogs, posting) ->
-            postingLogs.stream().anyMatch(postingLog -> postingComparator.test(posting, postingLog));
-
     public static final Logger log = LoggerFactory.getLogger(AccounterValidator.class);
 
     public static void validateStaticPostings(PostingPlan postingPlan) throws TException {
@@ -131,18 +115,24 @@ public class AccounterValidator {
             List<PostingLog> savedDomainPostings = savedDomainPostingsMap.get(batchId);
             List<Posting> receivedProtocolPostings = receivedProtocolPostingsMap.get(batchId);
 
+            // multiset difference: every received posting consumes one equal saved posting
+            Map<PostingFingerprint, Integer> unmatchedSaved = new HashMap<>(savedDomainPostings.size() * 2);
             for (PostingLog postingLog : savedDomainPostings) {
-                if (!containsPostingLog.test(receivedProtocolPostings, postingLog)) {
-                    addError.accept(ProtocolConverter.convertFromDomainToPosting(postingLog),
-                            String.format(SAVED_POSTING_NOT_FOUND_ERR, batchId));
-                }
+                unmatchedSaved.merge(new PostingFingerprint(postingLog), 1, Integer::sum);
             }
 
             for (Posting posting : receivedProtocolPostings) {
-                if (!containsPosting.test(savedDomainPostings, posting)) {
+                if (!consume(unmatchedSaved, new PostingFingerprint(posting))) {
                     addError.accept(posting, String.format(RECEIVED_POSTING_NOT_FOUND_ERR, batchId));
                 }
             }
+
+            for (PostingLog postingLog : savedDomainPostings) {
+                if (consume(unmatchedSaved, new PostingFingerprint(postingLog))) {
+                    addError.accept(ProtocolConverter.convertFromDomainToPosting(postingLog),
+                            String.format(SAVED_POSTING_NOT_FOUND_ERR, batchId));
+                }
+            }
         }
 
         if (finalOp) {
@@ -167,6 +157,19 @@ public class AccounterValidator {
                 .collect(Collectors.toMap(Map.Entry::getKey, entry -> generateMessage(entry.getValue())));
     }
 
+    private static boolean consume(Map<PostingFingerprint, Integer> postingCounts, PostingFingerprint fingerprint) {
+        Integer count = postingCounts.get(fingerprint);
+        if (count == null) {
+            return false;
+        }
+        if (count > 1) {
+            postingCounts.put(fingerprint, count - 1);
+        } else {
+            postingCounts.remove(fingerprint);
+        }
+        return true;
+    }
+
     public static void validatePlanBatches(PostingPlan receivedProtocolBathPlan,
                                            Map<Long, List<PostingLog>> savedDomainBatchLogs, boolean finalOp)
             throws TException {
@@ -175,9 +178,31 @@ public class AccounterValidator {
         validateEqualToSavedPostings(receivedProtocolBatchLogs, savedDomainBatchLogs, finalOp);
     }
 
+    /**
+     * Compares received batches with saved ones by digests, saved postings are needed only to report mismatch
+     * with {@link #validatePlanBatches}.
+     *
+     * @return true if received batches are valid: saved batches are equal to saved ones, new batches
+     * don't precede saved ones, final operation contains all saved batches and no new ones
+     */
+    public static boolean matchesSavedDigests(Map<Long, byte[]> receivedBatchDigests,
+                                              Map<Long, byte[]> savedBatchDigests, boolean finalOp) {
+        long maxSavedBatchId = savedBatchDigests.keySet().stream().mapToLong(i -> i).max().orElse(Long.MIN_VALUE);
+        for (Map.Entry<Long, byte[]> entry : receivedBatchDigests.entrySet()) {
+            byte[] savedDigest = savedBatchDigests.get(entry.getKey());
+            if (savedDigest == null) {
+                if (finalOp || entry.getKey() < maxSavedBatchId) {
+                    return false;
+                }
+            } else if (!Arrays.equals(savedDigest, entry.getValue())) {
+                return false;
+            }
+        }
+        return !finalOp || receivedBatchDigests.size() == savedBatchDigests.size();
+    }
 
     public static void validateAccounts(List<PostingBatch> newProtocolPostings,
-                                        Map<Long, StatefulAccount> domainAccountMap) throws TException {
+                                        Map<Long, ? extends Account> domainAccountMap) throws TException {
         Map<Posting, String> errors = new HashMap<>();
         for (PostingBatch newProtocolBatch : newProtocolPostings) {
             for (Posting posting : newProtocolBatch.getPostings()) {
@@ -212,6 +237,30 @@ public class AccounterValidator {
         }
     }
 
+    public static void validateStripes(List<PostingBatch> protocolBatches, AccountStripes stripes) throws TException {
+        if (stripes.isEmpty()) {
+            return;
+        }
+        Map<Posting, String> errors = new HashMap<>();
+        for (PostingBatch protocolBatch : protocolBatches) {
+            for (Posting posting : protocolBatch.getPostings()) {
+                List<String> errorMessages = new ArrayList<>();
+                if (stripes.isStripe(posting.getFromId())) {
+                    errorMessages.add(String.format(ACC_STRIPE_ERR, posting.getFromId(), protocolBatch.getId()));
+                }
+                if (stripes.isStripe(posting.getToId())) {
+                    errorMessages.add(String.format(ACC_STRIPE_ERR, posting.getToId(), protocolBatch.getId()));
+                }
+                if (!errorMessages.isEmpty()) {
+                    errors.put(posting, generateMessage(errorMessages));
+                }
+            }
+        }
+        if (!errors.isEmpty()) {
+            throw new InvalidPostingParams(errors);
+        }
+    }
+
     public static TException validatePlanNotFixedResult(
             PostingPlanLog receivedDomainPlanLog,
             PostingPlanLog oldDomainPlanLog,
@@ -279,4 +328,54 @@ public class AccounterValidator {
         return source == PostingOperation.HOLD;
     }
 
+    /**
+     * Posting attributes that must be equal for received posting to match saved one.
+     */
+    private static final class PostingFingerprint {
+        private final long fromId;
+        private final long toId;
+        private final long amount;
+        private final String currSymCode;
+        private final String description;
+
+        private PostingFingerprint(Posting posting) {
+            this(posting.getFromId(), posting.getToId(), posting.getAmount(), posting.getCurrencySymCode(),
+                    posting.getDescription());
+        }
+
+        private PostingFingerprint(PostingLog postingLog) {
+            this(postingLog.getFromAccountId(), postingLog.getToAccountId(), postingLog.getAmount(),
+                    postingLog.getCurrSymCode(), postingLog.getDescription());
+        }
+
+        private PostingFingerprint(long fromId, long toId, long amount, String currSymCode, String description) {
+            this.fromId = fromId;
+            this.toId = toId;
+            this.amount = amount;
+            this.currSymCode = currSymCode;
+            this.description = description;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof PostingFingerprint)) {
+                return false;
+            }
+            PostingFingerprint that = (PostingFingerprint) o;
+            return fromId == that.fromId
+                    && toId == that.toId
+                    && amount == that.amount
+                    && Objects.equals(currSymCode, that.currSymCode)
+                    && Objects.equals(description, that.description);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(fromId, toId, amount, currSymCode, description);
+        }
+    }
+
 }
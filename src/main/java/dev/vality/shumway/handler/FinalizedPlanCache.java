@@ -0,0 +1,75 @@
+package dev.vality.shumway.handler;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import dev.vality.damsel.accounter.Posting;
+import dev.vality.damsel.accounter.PostingBatch;
+import dev.vality.damsel.accounter.PostingPlan;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.lang.Nullable;
+
+/**
+ * Converted plans, which are committed or rolled back, so never change.
+ * Bounded by estimated memory size of cached plans.
+ */
+public class FinalizedPlanCache {
+    public static final String CACHE_NAME = "finalized_plan";
+
+    private static final int PLAN_BYTES = 64;
+    private static final int BATCH_BYTES = 64;
+    private static final int POSTING_BYTES = 128;
+
+    @Nullable
+    private final Cache<String, PostingPlan> cache;
+
+    public FinalizedPlanCache(long maxSizeBytes, MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxSizeBytes)
+                .weigher((String planId, PostingPlan plan) -> estimateSize(plan))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    private FinalizedPlanCache() {
+        this.cache = null;
+    }
+
+    public static FinalizedPlanCache disabled() {
+        return new FinalizedPlanCache();
+    }
+
+    /**
+     * @return Copy of the cached plan, null if it's not cached
+     */
+    @Nullable
+    public PostingPlan get(String planId) {
+        if (cache == null) {
+            return null;
+        }
+        PostingPlan plan = cache.getIfPresent(planId);
+        return plan == null ? null : new PostingPlan(plan);
+    }
+
+    public void put(PostingPlan plan) {
+        if (cache != null) {
+            cache.put(plan.getId(), new PostingPlan(plan));
+        }
+    }
+
+    static int estimateSize(PostingPlan plan) {
+        long size = PLAN_BYTES + stringSize(plan.getId());
+        for (PostingBatch batch : plan.getBatchList()) {
+            size += BATCH_BYTES;
+            for (Posting posting : batch.getPostings()) {
+                size += POSTING_BYTES + stringSize(posting.getCurrencySymCode()) + stringSize(posting.getDescription());
+            }
+        }
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    private static long stringSize(@Nullable String value) {
+        return value == null ? 0 : 40 + value.length();
+    }
+}
@@ -0,0 +1,92 @@
+package dev.vality.shumway.handler;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import dev.vality.damsel.accounter.PostingPlan;
+import dev.vality.damsel.accounter.PostingPlanLog;
+import dev.vality.shumway.domain.PostingOperation;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.lang.Nullable;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Results of applied final operations, which answer duplicate requests without database access.
+ * Results are kept by plan id with operation and request digest. A finalized plan can't change anymore, so its
+ * result is valid regardless of the instance which processes the plan; holds aren't cached, because the plan
+ * can be finalized by another instance, then their duplicates must be rejected by the database.
+ */
+public class IdempotencyCache {
+    public static final String CACHE_NAME = "idempotency";
+
+    @Nullable
+    private final Cache<String, FinalResult> cache;
+
+    public IdempotencyCache(long maxPlans, Duration expireAfterWrite, MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxPlans)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    private IdempotencyCache() {
+        this.cache = null;
+    }
+
+    public static IdempotencyCache disabled() {
+        return new IdempotencyCache();
+    }
+
+    /**
+     * @return Copy of the result of the same final operation, null if it's not applied, not cached or it's a hold
+     */
+    @Nullable
+    public PostingPlanLog get(PostingPlan postingPlan, PostingOperation operation) {
+        if (cache == null || !AccounterHandler.isFinalOperation(operation)) {
+            return null;
+        }
+        FinalResult finalResult = cache.getIfPresent(postingPlan.getId());
+        if (finalResult == null || finalResult.operation != operation
+                || !finalResult.digest.equals(digest(postingPlan))) {
+            return null;
+        }
+        return new PostingPlanLog(finalResult.result);
+    }
+
+    public void put(PostingPlan postingPlan, PostingOperation operation, PostingPlanLog result) {
+        if (cache == null || !AccounterHandler.isFinalOperation(operation)) {
+            return;
+        }
+        cache.put(postingPlan.getId(), new FinalResult(operation, digest(postingPlan), new PostingPlanLog(result)));
+    }
+
+    /**
+     * @return Plan digest, which doesn't depend on batch and posting order, so reordered retries are matched,
+     * null if batch ids are repeated, such plans are rejected by validation and never match
+     */
+    @Nullable
+    static ByteBuffer digest(PostingPlan postingPlan) {
+        Map<Long, byte[]> batchDigests = PostingDigest.batches(postingPlan);
+        if (batchDigests.size() != postingPlan.getBatchListSize()) {
+            return null;
+        }
+        return ByteBuffer.wrap(PostingDigest.plan(batchDigests));
+    }
+
+    private static final class FinalResult {
+        private final PostingOperation operation;
+        private final ByteBuffer digest;
+        private final PostingPlanLog result;
+
+        private FinalResult(PostingOperation operation, ByteBuffer digest, PostingPlanLog result) {
+            this.operation = operation;
+            this.digest = digest;
+            this.result = result;
+        }
+    }
+}
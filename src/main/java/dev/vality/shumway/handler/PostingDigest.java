@@ -0,0 +1,102 @@
+package dev.vality.shumway.handler;
+
+import dev.vality.damsel.accounter.Posting;
+import dev.vality.damsel.accounter.PostingBatch;
+import dev.vality.damsel.accounter.PostingPlan;
+import org.springframework.lang.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * SHA-256 digests of received postings, compared with the digests saved on hold instead of saved postings.
+ * Batch digest doesn't depend on posting order, as received postings are matched with saved ones as a multiset.
+ * Plan digest chains batch digests in batch id order (holds can't add batches preceding saved ones),
+ * so it's extended by every held batch.
+ */
+public final class PostingDigest {
+    private static final byte[] EMPTY = new byte[0];
+
+    private PostingDigest() {
+    }
+
+    public static byte[] batch(PostingBatch batch) {
+        List<Posting> postings = batch.getPostings();
+        MessageDigest digest = newDigest();
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES * 3);
+        byte[][] postingDigests = new byte[postings.size()][];
+        for (int i = 0; i < postingDigests.length; i++) {
+            Posting posting = postings.get(i);
+            buffer.clear().putLong(posting.getFromId()).putLong(posting.getToId()).putLong(posting.getAmount()).flip();
+            digest.update(buffer);
+            update(digest, buffer, posting.getCurrencySymCode());
+            update(digest, buffer, posting.getDescription());
+            postingDigests[i] = digest.digest();
+        }
+        Arrays.sort(postingDigests, Arrays::compareUnsigned);
+
+        buffer.clear().putLong(batch.getId()).putLong(postingDigests.length).flip();
+        digest.update(buffer);
+        for (byte[] postingDigest : postingDigests) {
+            digest.update(postingDigest);
+        }
+        return digest.digest();
+    }
+
+    /**
+     * @return Batch digests by batch id
+     */
+    public static Map<Long, byte[]> batches(PostingPlan plan) {
+        Map<Long, byte[]> result = new HashMap<>(plan.getBatchListSize() * 2);
+        for (PostingBatch batch : plan.getBatchList()) {
+            result.put(batch.getId(), batch(batch));
+        }
+        return result;
+    }
+
+    public static byte[] plan(PostingPlan plan) {
+        return plan(batches(plan));
+    }
+
+    public static byte[] plan(Map<Long, byte[]> batchDigests) {
+        byte[] planDigest = EMPTY;
+        for (byte[] batchDigest : new TreeMap<>(batchDigests).values()) {
+            planDigest = chain(planDigest, batchDigest);
+        }
+        return planDigest;
+    }
+
+    /**
+     * @param planDigest Digest of previous batches, empty for the first batch
+     */
+    public static byte[] chain(byte[] planDigest, byte[] batchDigest) {
+        MessageDigest digest = newDigest();
+        digest.update(planDigest);
+        digest.update(batchDigest);
+        return digest.digest();
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void update(MessageDigest digest, ByteBuffer buffer, @Nullable String value) {
+        byte[] bytes = value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+        buffer.clear().putLong(bytes == null ? -1 : bytes.length).flip();
+        digest.update(buffer);
+        if (bytes != null) {
+            digest.update(bytes);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package dev.vality.shumway.handler;
+
+import dev.vality.shumway.domain.PostingOperation;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of posting operation processing phases.
+ * Published as {@value #PHASE_METRIC} timer with percentile histogram, tagged by phase, operation
+ * and request type (new or duplicate).
+ */
+public class PostingMetrics {
+    public static final String PHASE_METRIC = "shumway.posting.phase";
+
+    private final MeterRegistry meterRegistry;
+
+    public PostingMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public static PostingMetrics noop() {
+        return new PostingMetrics(new CompositeMeterRegistry());
+    }
+
+    public Phases start(PostingOperation operation) {
+        return new Phases(operation);
+    }
+
+    public enum Phase {
+        STATIC_VALIDATION("static_validation"),
+        PLAN_UPSERT("plan_upsert"),
+        SAVED_POSTINGS_READ("saved_postings_read"),
+        PLAN_VALIDATION("plan_validation"),
+        ACCOUNT_LOCK("account_lock"),
+        ACCOUNT_STATE_READ("account_state_read"),
+        ACCOUNT_VALIDATION("account_validation"),
+        POSTING_INSERT("posting_insert"),
+        /**
+         * Account log computation and insert.
+         */
+        ACCOUNT_LOG_INSERT("account_log_insert"),
+        SERVER_SIDE_EXECUTION("server_side_execution"),
+        RESULT_CONVERSION("result_conversion");
+
+        private final String tag;
+
+        Phase(String tag) {
+            this.tag = tag;
+        }
+
+        public String getTag() {
+            return tag;
+        }
+    }
+
+    /**
+     * Phase durations of single request, published at once when request type is known.
+     * Durations of repeated phases (e.g. on transaction retry) are summed up.
+     */
+    public class Phases {
+        private final PostingOperation operation;
+        private final Map<Phase, Long> durations = new EnumMap<>(Phase.class);
+        private boolean duplicate;
+
+        private Phases(PostingOperation operation) {
+            this.operation = operation;
+        }
+
+        public long begin() {
+            return System.nanoTime();
+        }
+
+        public void end(Phase phase, long beginNanos) {
+            durations.merge(phase, System.nanoTime() - beginNanos, Long::sum);
+        }
+
+        public void setDuplicate(boolean duplicate) {
+            this.duplicate = duplicate;
+        }
+
+        public void publish() {
+            String requestType = duplicate ? "duplicate" : "new";
+            durations.forEach((phase, nanos) -> Timer.builder(PHASE_METRIC)
+                    .tag("phase", phase.getTag())
+                    .tag("operation", operation.getKey())
+                    .tag("request", requestType)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)
+                    .record(nanos, TimeUnit.NANOSECONDS));
+        }
+    }
+}
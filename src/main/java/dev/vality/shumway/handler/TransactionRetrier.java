@@ -0,0 +1,112 @@
+package dev.vality.shumway.handler;
+
+import dev.vality.shumway.dao.AccountStateConflictException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Retries transactions aborted by lock conflicts: deadlock, serialization failure, lock wait timeout
+ * or account state version conflict of optimistic lock mode.
+ * Retry delay is exponential with full jitter.
+ */
+public class TransactionRetrier {
+    public static final String RETRY_METRIC = "shumway.transaction.retry";
+    public static final String RETRY_EXHAUSTED_METRIC = "shumway.transaction.retry.exhausted";
+    public static final String ACCOUNT_STATE_CONFLICT = "account_state_conflict";
+
+    private static final Map<String, String> RETRYABLE_STATES = Map.of(
+            "40P01", "deadlock",
+            "40001", "serialization_failure",
+            "55P03", "lock_not_available"
+    );
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private final int maxAttempts;
+    private final long baseBackoffMs;
+    private final long maxBackoffMs;
+    private final MeterRegistry meterRegistry;
+
+    public TransactionRetrier(int maxAttempts, long baseBackoffMs, long maxBackoffMs, MeterRegistry meterRegistry) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseBackoffMs = baseBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public static TransactionRetrier noRetry() {
+        return new TransactionRetrier(1, 0, 0, null);
+    }
+
+    public <T> T execute(Supplier<T> transaction) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transaction.get();
+            } catch (RuntimeException e) {
+                String reason = getRetryReason(e);
+                if (reason == null) {
+                    throw e;
+                }
+                if (attempt >= maxAttempts) {
+                    log.warn("Transaction failed with {}, retry attempts are exhausted: {}", reason, attempt);
+                    count(RETRY_EXHAUSTED_METRIC, reason);
+                    throw e;
+                }
+                log.info("Transaction failed with {}, retry attempt: {}", reason, attempt);
+                count(RETRY_METRIC, reason);
+                backoff(attempt, e);
+            }
+        }
+    }
+
+    /**
+     * @return Retry reason if error is caused by retryable lock conflict, null otherwise
+     */
+    public static String getRetryReason(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof AccountStateConflictException) {
+                return ACCOUNT_STATE_CONFLICT;
+            }
+            if (cause instanceof SQLException) {
+                String reason = RETRYABLE_STATES.get(((SQLException) cause).getSQLState());
+                if (reason != null) {
+                    return reason;
+                }
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return null;
+    }
+
+    private void backoff(int attempt, RuntimeException e) {
+        long maxDelay = Math.min(maxBackoffMs, baseBackoffMs << Math.min(attempt - 1, 20));
+        if (maxDelay <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(maxDelay + 1));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            e.addSuppressed(ex);
+            throw e;
+        }
+    }
+
+    private void count(String metric, String reason) {
+        if (meterRegistry != null) {
+            Counter.builder(metric)
+                    .tag("reason", reason)
+                    .register(meterRegistry)
+                    .increment();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package dev.vality.shumway.job;
+
+import dev.vality.shumway.dao.AccountDao;
+import dev.vality.shumway.dao.DaoException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+
+/**
+ * Folds hold account logs of closed plans into their final logs.
+ * Each compaction step runs in its own short transaction and skips logs locked by other instances,
+ * so posting traffic is not blocked. Run ends when there is nothing left to compact or step limit is reached.
+ */
+public class AccountLogCompactionJob {
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private final AccountDao accountDao;
+    private final int logsPerStep;
+    private final int maxSteps;
+    private final long minAgeSec;
+
+    public AccountLogCompactionJob(AccountDao accountDao, int logsPerStep, int maxSteps, long minAgeSec) {
+        this.accountDao = accountDao;
+        this.logsPerStep = logsPerStep;
+        this.maxSteps = maxSteps;
+        this.minAgeSec = minAgeSec;
+    }
+
+    @Scheduled(fixedDelayString = "${account.compaction.interval_ms}")
+    public void compact() {
+        long total = 0;
+        try {
+            for (int step = 0; step < maxSteps; step++) {
+                int compacted = accountDao.compactLogs(logsPerStep, minAgeSec);
+                total += compacted;
+                if (compacted < logsPerStep) {
+                    break;
+                }
+            }
+        } catch (DaoException e) {
+            log.error("Failed to compact account logs", e);
+        }
+        if (total > 0) {
+            log.info("Compacted account logs of closed plans: {}", total);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package dev.vality.shumway.job;
+
+import dev.vality.shumway.dao.DaoException;
+import dev.vality.shumway.dao.PartitionDao;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.util.List;
+
+/**
+ * Keeps monthly partitions of account and posting logs created in advance.
+ * Runs on startup and periodically afterwards, partition creation is idempotent and safe to run
+ * from several instances.
+ */
+public class PartitionMaintenanceJob {
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private final PartitionDao partitionDao;
+    private final int monthsAhead;
+
+    public PartitionMaintenanceJob(PartitionDao partitionDao, int monthsAhead) {
+        this.partitionDao = partitionDao;
+        this.monthsAhead = monthsAhead;
+    }
+
+    @Scheduled(initialDelay = 0, fixedDelayString = "${partition.maintenance.interval_ms}")
+    public void createPartitions() {
+        try {
+            List<String> partitions = partitionDao.createPartitions(monthsAhead);
+            if (partitions.isEmpty()) {
+                log.debug("Log partitions for {} months ahead already exist", monthsAhead);
+            } else {
+                log.info("Created log partitions: {}", partitions);
+            }
+        } catch (DaoException e) {
+            log.error("Failed to create log partitions", e);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package dev.vality.shumway.service;
+
+import dev.vality.shumway.domain.PostingLog;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Accumulates amount diffs per account on primitive arrays without boxing.
+ * Accounts are kept in insertion order and can be iterated by index with {@link #accountIdAt(int)}
+ * and {@link #diffAt(int)}. Open addressing index with linear probing is used for lookups.
+ * Instance is not thread safe and can be reused after {@link #clear()}.
+ */
+public class AccountDiffs {
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] accountIds;
+    private long[] diffs;
+    // slot holds position in accountIds + 1, 0 is empty slot
+    private int[] slots;
+    private int size;
+
+    public AccountDiffs() {
+        this(MIN_CAPACITY / 2);
+    }
+
+    public AccountDiffs(int expectedSize) {
+        int capacity = Math.max(MIN_CAPACITY / 2, expectedSize);
+        accountIds = new long[capacity];
+        diffs = new long[capacity];
+        slots = new int[tableSize(capacity)];
+    }
+
+    public static AccountDiffs of(Collection<PostingLog> postingLogs) {
+        return new AccountDiffs(postingLogs.size()).addAll(postingLogs);
+    }
+
+    /**
+     * Adds posting amounts: withdraws from source account and deposits to destination account.
+     */
+    public AccountDiffs addAll(Collection<PostingLog> postingLogs) {
+        for (PostingLog pl : postingLogs) {
+            add(pl.getFromAccountId(), -pl.getAmount());
+            add(pl.getToAccountId(), pl.getAmount());
+        }
+        return this;
+    }
+
+    public void add(long accountId, long diff) {
+        int slot = findSlot(accountId);
+        int pos = slots[slot] - 1;
+        if (pos >= 0) {
+            diffs[pos] += diff;
+            return;
+        }
+        if (size == accountIds.length) {
+            grow();
+            slot = findSlot(accountId);
+        }
+        accountIds[size] = accountId;
+        diffs[size] = diff;
+        slots[slot] = ++size;
+    }
+
+    public boolean contains(long accountId) {
+        return slots[findSlot(accountId)] != 0;
+    }
+
+    /**
+     * @return Accumulated diff, 0 if account has no diffs
+     */
+    public long get(long accountId) {
+        int pos = slots[findSlot(accountId)] - 1;
+        return pos >= 0 ? diffs[pos] : 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long accountIdAt(int index) {
+        return accountIds[index];
+    }
+
+    public long diffAt(int index) {
+        return diffs[index];
+    }
+
+    public void clear() {
+        Arrays.fill(slots, 0);
+        size = 0;
+    }
+
+    private int findSlot(long accountId) {
+        int mask = slots.length - 1;
+        int slot = hash(accountId) & mask;
+        while (slots[slot] != 0 && accountIds[slots[slot] - 1] != accountId) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        int capacity = accountIds.length * 2;
+        accountIds = Arrays.copyOf(accountIds, capacity);
+        diffs = Arrays.copyOf(diffs, capacity);
+        slots = new int[tableSize(capacity)];
+        for (int pos = 0; pos < size; pos++) {
+            slots[findSlot(accountIds[pos])] = pos + 1;
+        }
+    }
+
+    private static int tableSize(int capacity) {
+        // keeps load factor at most 0.5
+        return Integer.highestOneBit(capacity * 2 - 1) << 1;
+    }
+
+    private static int hash(long value) {
+        long h = value * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
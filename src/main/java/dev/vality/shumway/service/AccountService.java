@@ -21,6 +21,7 @@ public class AccountService {
 
     private final AccountDao masterDao;
     private final AccountReplicaDao replicaDao;
+    private final boolean stripingEnabled;
 
     private final Function<Collection<PostingBatch>, Set<Long>> getUnicAccountIds = (batches) -> batches
             .stream()
@@ -30,19 +31,79 @@ public class AccountService {
 
     public AccountService(AccountDao masterDao,
                           AccountReplicaDao replicaDao) {
+        this(masterDao, replicaDao, false);
+    }
+
+    public AccountService(AccountDao masterDao,
+                          AccountReplicaDao replicaDao,
+                          boolean stripingEnabled) {
         this.masterDao = masterDao;
         this.replicaDao = replicaDao;
+        this.stripingEnabled = stripingEnabled;
     }
 
     public long createAccount(Account prototype) {
         return masterDao.add(prototype);
     }
 
+    /**
+     * State of striped account is the sum of its stripe states, which are read without locks:
+     * plans in progress on other stripes aren't waited for, so the sum may not match the states
+     * reported to those plans.
+     */
     public StatefulAccount getStatefulAccount(long id) {
         log.debug("Get stateful account: {}", id);
-        Map<Long, StatefulAccount> result = masterDao.getStateful(List.of(id));
+        AccountStripes stripes = getAccountStripes(List.of(id));
+        Map<Long, StatefulAccount> result = masterDao.getStateful(stripes.getStripes(id));
         log.debug("Got accounts: {}:{}", result.size(), result.values());
-        return result.get(id);
+        StatefulAccount account = result.get(id);
+        if (account == null || !stripes.isStriped(id)) {
+            return account;
+        }
+        AccountState accountState = result.values().stream()
+                .map(StatefulAccount::getAccountState)
+                .reduce(new AccountState(), AccountState::plus);
+        return new StatefulAccount(account, accountState);
+    }
+
+    public AccountStripes getAccountStripes(Collection<PostingBatch> batches) {
+        return getAccountStripes(getUnicAccountIds.apply(batches));
+    }
+
+    private AccountStripes getAccountStripes(Collection<Long> accountIds) {
+        if (!stripingEnabled) {
+            return AccountStripes.EMPTY;
+        }
+        log.debug("Get account stripes: {}", accountIds);
+        Map<Long, List<Long>> result = masterDao.getStripes(accountIds);
+        log.debug("Got account stripes: {}", result);
+        return result.isEmpty() ? AccountStripes.EMPTY : new AccountStripes(result);
+    }
+
+    /**
+     * Pins striped accounts of existing plan to the stripes, which already have its logs, so plans held before
+     * the account was striped or before striping was enabled are served by the stripe that holds them.
+     */
+    public AccountStripes pinPlanStripes(String planId, AccountStripes stripes) {
+        if (stripes.isEmpty()) {
+            return stripes;
+        }
+        List<Long> stripeIds = stripes.getStripedIds().stream()
+                .flatMap(accId -> stripes.getStripes(accId).stream())
+                .collect(Collectors.toList());
+        Set<Long> planStripeIds = masterDao.getPlanAccountIds(planId, stripeIds);
+        log.debug("Got plan {} stripes: {}", planId, planStripeIds);
+        return planStripeIds.isEmpty() ? stripes : stripes.withPlanStripes(planStripeIds);
+    }
+
+    /**
+     * @return Accounts referred by postings, without states and locks
+     */
+    public Map<Long, Account> getAccounts(Collection<PostingBatch> batches) {
+        Collection<Long> uniqAccIds = getUnicAccountIds.apply(batches);
+        log.debug("Get accounts: {}", uniqAccIds);
+        return masterDao.get(uniqAccIds).stream()
+                .collect(Collectors.toMap(Account::getId, account -> account));
     }
 
     public Map<Long, StatefulAccount> getStatefulAccounts(Collection<PostingBatch> batches) {
@@ -67,40 +128,107 @@ public class AccountService {
     public Map<Long, StatefulAccount> getStatefulAccounts(
             Collection<PostingBatch> batches,
             String planId,
-            boolean finalOp
+            boolean finalOp,
+            AccountStripes stripes
     ) {
         long lastBatchId = finalOp ? Long.MAX_VALUE : batches.stream().mapToLong(PostingBatch::getId).max().getAsLong();
-        Collection<Long> uniqAccIds = getUnicAccountIds.apply(batches);
+        Collection<Long> uniqAccIds = resolveStripes(getUnicAccountIds.apply(batches), planId, stripes).keySet();
         log.debug("Get stateful accounts: {}, plan: {}, up to batch: {}", uniqAccIds, planId, lastBatchId);
         Map<Long, StatefulAccount> result = masterDao.getStatefulUpTo(uniqAccIds, planId, lastBatchId);
         log.debug("Got accounts: {}:{}", result.size(), result.values());
-        return result;
+        return toLogicalAccounts(result, planId, stripes);
     }
 
-    public Map<Long, StatefulAccount> getStatefulExclusiveAccounts(Collection<PostingBatch> batches) {
-        Collection<Long> uniqAccIds = getUnicAccountIds.apply(batches);
+    public Map<Long, StatefulAccount> getStatefulExclusiveAccounts(
+            Collection<PostingBatch> batches,
+            String planId,
+            AccountStripes stripes
+    ) {
+        Collection<Long> uniqAccIds = resolveStripes(getUnicAccountIds.apply(batches), planId, stripes).keySet();
         log.debug("Get stateful exclusive accounts by ids: {}", uniqAccIds);
         Map<Long, StatefulAccount> result = masterDao.getStatefulExclusive(uniqAccIds);
         log.debug("Got exclusive accounts: {}:{}", result.size(), result.values());
+        return toLogicalAccounts(result, planId, stripes);
+    }
+
+    /**
+     * Adds current states of the stripes, that don't serve referred plan, to the states of striped accounts.
+     * Stripes are read without locks, so the sum reflects the last committed state of other plans
+     * and may be inconsistent across stripes: other stripes can change between the plan stripe state
+     * and this read.
+     */
+    public Map<Long, AccountState> mergeStripeStates(Map<Long, AccountState> accountStates, String planId,
+                                                     AccountStripes stripes) {
+        if (stripes.isEmpty()) {
+            return accountStates;
+        }
+        Map<Long, Long> otherStripes = new HashMap<>();
+        for (Long accId : accountStates.keySet()) {
+            long planStripeId = stripes.resolve(accId, planId);
+            stripes.getStripes(accId).stream()
+                    .filter(stripeId -> stripeId != planStripeId)
+                    .forEach(stripeId -> otherStripes.put(stripeId, accId));
+        }
+        if (otherStripes.isEmpty()) {
+            return accountStates;
+        }
+        log.debug("Get other stripes states: {}", otherStripes.keySet());
+        Map<Long, StatefulAccount> otherStates = masterDao.getStateful(otherStripes.keySet());
+        Map<Long, AccountState> result = new HashMap<>(accountStates);
+        otherStates.forEach((stripeId, stripe) ->
+                result.merge(otherStripes.get(stripeId), stripe.getAccountState(), AccountState::plus));
         return result;
     }
 
+    /**
+     * @return Stripe account id to logical account id mapping
+     */
+    private Map<Long, Long> resolveStripes(Collection<Long> accountIds, String planId, AccountStripes stripes) {
+        return accountIds.stream()
+                .collect(Collectors.toMap(accId -> stripes.resolve(accId, planId), Function.identity()));
+    }
+
+    private Map<Long, StatefulAccount> toLogicalAccounts(Map<Long, StatefulAccount> stripeAccounts, String planId,
+                                                         AccountStripes stripes) {
+        if (stripes.isEmpty()) {
+            return stripeAccounts;
+        }
+        Map<Long, Long> logicalIds = resolveStripes(stripes.getStripedIds(), planId, stripes);
+        return stripeAccounts.values().stream()
+                .map(acc -> logicalIds.containsKey(acc.getId())
+                        ? new StatefulAccount(logicalIds.get(acc.getId()), acc.getCreationTime(),
+                        acc.getCurrSymCode(), acc.getDescription(), acc.getAccountState())
+                        : acc)
+                .collect(Collectors.toMap(Account::getId, acc -> acc));
+    }
+
     public Map<Long, AccountState> holdAccounts(String ppId, PostingBatch pb, List<PostingLog> newPostingLogs,
                                                 List<PostingLog> savedPostingLogs,
-                                                Map<Long, StatefulAccount> statefulAccounts) {
-        final List<AccountLog> accountLogs = new ArrayList<>();
+                                                Map<Long, StatefulAccount> statefulAccounts,
+                                                AccountStripes stripes) {
+        return holdAccounts(ppId, pb, newPostingLogs, AccountDiffs.of(savedPostingLogs), statefulAccounts, stripes);
+    }
 
+    /**
+     * @param savedDiffs Net amount diffs of previously held postings of the plan
+     */
+    public Map<Long, AccountState> holdAccounts(String ppId, PostingBatch pb, List<PostingLog> newPostingLogs,
+                                                AccountDiffs savedDiffs,
+                                                Map<Long, StatefulAccount> statefulAccounts,
+                                                AccountStripes stripes) {
         long ownAmountDiff = 0;
         long negDiff;
         long posDiff;
 
-        final Map<Long, Long> newDiffsMap = computeDiffs(newPostingLogs);
-        final Map<Long, Long> savedDiffsMap = computeDiffs(savedPostingLogs);
-        final Map<Long, Long> mergedDiffsMap = mergeDiffs(newDiffsMap, savedDiffsMap);
-        final Map<Long, AccountState> resultAccStates = new HashMap<>();
-        for (Long accId : newDiffsMap.keySet()) {
-            boolean firstHoldForThisAcc = !savedDiffsMap.containsKey(accId);
-            final long newDiff = newDiffsMap.get(accId);
+        final AccountDiffs newDiffs = AccountDiffs.of(newPostingLogs);
+        final List<AccountLog> accountLogs = new ArrayList<>(newDiffs.size());
+        final Map<Long, AccountState> resultAccStates = new HashMap<>(newDiffs.size() * 2);
+        final Map<Long, Long> expectedVersions = new HashMap<>(newDiffs.size() * 2);
+        final Instant creationTime = Instant.now();
+        for (int i = 0; i < newDiffs.size(); i++) {
+            final long accId = newDiffs.accountIdAt(i);
+            final long newDiff = newDiffs.diffAt(i);
+            boolean firstHoldForThisAcc = !savedDiffs.contains(accId);
 
             if (firstHoldForThisAcc) {
                 negDiff = newDiff < 0 ? newDiff : 0;
@@ -108,8 +236,8 @@ public class AccountService {
 
             } else {
                 // second+ hold
-                final long savedDiff = savedDiffsMap.get(accId);
-                final long mergedDiff = mergedDiffsMap.get(accId);
+                final long savedDiff = savedDiffs.get(accId);
+                final long mergedDiff = savedDiff + newDiff;
 
                 boolean signChanged = (savedDiff < 0 && mergedDiff >= 0) || (savedDiff >= 0 && mergedDiff < 0);
                 if (signChanged) {
@@ -132,43 +260,57 @@ public class AccountService {
 
             }
             AccountState accountState = statefulAccounts.get(accId).getAccountState();
-            AccountLog accountLog = createAccountLog(pb.getId(), ppId, accId, PostingOperation.HOLD, accountState,
-                    ownAmountDiff, posDiff, negDiff, newDiff);
+            AccountLog accountLog = createAccountLog(pb.getId(), ppId, stripes.resolve(accId, ppId),
+                    PostingOperation.HOLD, creationTime, accountState, ownAmountDiff, posDiff, negDiff, newDiff);
 
             accountLogs.add(accountLog);
+            expectedVersions.put(accountLog.getAccountId(), accountState.getVersion());
             resultAccStates.put(accId, new AccountState(accountLog.getOwnAccumulated(), accountLog.getMinAccumulated(),
                     accountLog.getMaxAccumulated()));
         }
         log.debug("Add account hold logs: {}", accountLogs);
-        masterDao.addLogs(accountLogs);
+        masterDao.addLogs(accountLogs, expectedVersions);
         log.debug("Added hold logs: {}", accountLogs.size());
         return resultAccStates;
     }
 
     public Map<Long, AccountState> commitOrRollback(PostingOperation op, String ppId, List<PostingLog> newPostingLogs,
-                                                    Map<Long, StatefulAccount> statefulAccounts) {
-        final List<AccountLog> accountLogs = new ArrayList<>();
-        final Map<Long, Long> newDiffsMap = computeDiffs(newPostingLogs);
-        final Map<Long, AccountState> resultAccStates = new HashMap<>();
+                                                    Map<Long, StatefulAccount> statefulAccounts,
+                                                    AccountStripes stripes) {
+        return commitOrRollback(op, ppId, AccountDiffs.of(newPostingLogs), statefulAccounts, stripes);
+    }
+
+    /**
+     * @param newDiffs Net amount diffs of all plan postings
+     */
+    public Map<Long, AccountState> commitOrRollback(PostingOperation op, String ppId, AccountDiffs newDiffs,
+                                                    Map<Long, StatefulAccount> statefulAccounts,
+                                                    AccountStripes stripes) {
+        final List<AccountLog> accountLogs = new ArrayList<>(newDiffs.size());
+        final Map<Long, AccountState> resultAccStates = new HashMap<>(newDiffs.size() * 2);
+        final Map<Long, Long> expectedVersions = new HashMap<>(newDiffs.size() * 2);
+        final Instant creationTime = Instant.now();
 
         // has no sense for committed plan
         final long batchId = Long.MAX_VALUE;
 
-        for (Long accId : newDiffsMap.keySet()) {
-            final long newDiff = newDiffsMap.get(accId);
+        for (int i = 0; i < newDiffs.size(); i++) {
+            final long accId = newDiffs.accountIdAt(i);
+            final long newDiff = newDiffs.diffAt(i);
             long negDiff = newDiff < 0 ? -newDiff : 0;
             long posDiff = newDiff > 0 ? -newDiff : 0;
             long ownAmountDiff = PostingOperation.COMMIT.equals(op) ? newDiff : 0;
             AccountState accountState = statefulAccounts.get(accId).getAccountState();
-            AccountLog accountLog =
-                    createAccountLog(batchId, ppId, accId, op, accountState, ownAmountDiff, posDiff, negDiff, newDiff);
+            AccountLog accountLog = createAccountLog(batchId, ppId, stripes.resolve(accId, ppId), op,
+                    creationTime, accountState, ownAmountDiff, posDiff, negDiff, newDiff);
 
             accountLogs.add(accountLog);
+            expectedVersions.put(accountLog.getAccountId(), accountState.getVersion());
             resultAccStates.put(accId, new AccountState(accountLog.getOwnAccumulated(), accountLog.getMinAccumulated(),
                     accountLog.getMaxAccumulated()));
         }
         log.debug("Add account c/r logs: {}", accountLogs);
-        masterDao.addLogs(accountLogs);
+        masterDao.addLogs(accountLogs, expectedVersions);
         log.debug("Added c/r logs: {}", accountLogs.size());
         return resultAccStates;
     }
@@ -196,41 +338,31 @@ public class AccountService {
         return  amount;
     }
 
+    public Map<Long, Long> getAccountAvailableAmounts(Collection<Long> ids, String fromTime, String toTime) {
+        log.debug("Get available amounts for accounts: {}", ids.size());
+        var from = TypeUtil.stringToLocalDateTime(fromTime);
+        var to = TypeUtil.stringToLocalDateTime(toTime);
+        var amounts = replicaDao.getAccountBalanceDiffs(ids, from, to);
+        log.debug("Got available amounts for accounts: {}", amounts.size());
+        return amounts;
+    }
+
+    public Map<Long, Long> getAccountAvailableAmounts(Collection<Long> ids, String toTime) {
+        log.debug("Get available amounts for accounts: {}", ids.size());
+        var to = TypeUtil.stringToLocalDateTime(toTime);
+        var amounts = replicaDao.getAccountBalances(ids, to);
+        log.debug("Got available amounts for accounts: {}", amounts.size());
+        return amounts;
+    }
+
     private AccountLog createAccountLog(long batchId, String ppId, long accId, PostingOperation op,
-                                        AccountState accountState, long ownAmountDiff, long posDiff, long negDiff,
-                                        long newDiff) {
+                                        Instant creationTime, AccountState accountState, long ownAmountDiff,
+                                        long posDiff, long negDiff, long newDiff) {
         long newOwnAmount = accountState.getOwnAmount() + ownAmountDiff;
-        return new AccountLog(0, batchId, ppId, Instant.now(), accId, op,
+        return new AccountLog(0, batchId, ppId, creationTime, accId, op,
                 newOwnAmount,
                 accountState.getMaxAccumulatedDiff() + posDiff,
                 accountState.getMinAccumulatedDiff() + negDiff,
                 ownAmountDiff, negDiff, posDiff, newDiff < 0, false);
     }
-
-    private Map<Long, Long> computeDiffs(Collection<PostingLog> postingLogs) {
-        Map<Long, Long> accountIdToAmountDiff = new HashMap<>();
-
-        for (PostingLog pl : postingLogs) {
-            accountIdToAmountDiff.put(pl.getFromAccountId(),
-                    accountIdToAmountDiff.getOrDefault(pl.getFromAccountId(), 0L) - pl.getAmount());
-            accountIdToAmountDiff.put(pl.getToAccountId(),
-                    accountIdToAmountDiff.getOrDefault(pl.getToAccountId(), 0L) + pl.getAmount());
-        }
-
-        return accountIdToAmountDiff;
-    }
-
-    private Map<Long, Long> mergeDiffs(Map<Long, Long> one, Map<Long, Long> two) {
-        final Map<Long, Long> merged = new HashMap<>();
-
-        for (long accId : one.keySet()) {
-            merged.put(accId, merged.getOrDefault(accId, 0L) + one.get(accId));
-        }
-
-        for (long accId : two.keySet()) {
-            merged.put(accId, merged.getOrDefault(accId, 0L) + two.get(accId));
-        }
-
-        return merged;
-    }
 }
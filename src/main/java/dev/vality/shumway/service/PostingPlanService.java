@@ -1,13 +1,16 @@
 package dev.vality.shumway.service;
 
+import dev.vality.shumway.dao.PostingOperationDao;
 import dev.vality.shumway.dao.PostingPlanDao;
 import dev.vality.shumway.domain.PostingLog;
 import dev.vality.shumway.domain.PostingOperation;
 import dev.vality.shumway.domain.PostingPlanLog;
+import dev.vality.shumway.domain.StatefulAccount;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.AbstractMap;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -15,9 +18,15 @@ public class PostingPlanService {
     private final Logger log = LoggerFactory.getLogger(this.getClass());
 
     private final PostingPlanDao postingPlanDao;
+    private final PostingOperationDao postingOperationDao;
 
     public PostingPlanService(PostingPlanDao postingPlanDao) {
+        this(postingPlanDao, null);
+    }
+
+    public PostingPlanService(PostingPlanDao postingPlanDao, PostingOperationDao postingOperationDao) {
         this.postingPlanDao = postingPlanDao;
+        this.postingOperationDao = postingOperationDao;
     }
 
     public Map<Long, List<PostingLog>> getPostingLogs(String planId, PostingOperation operation) {
@@ -67,5 +76,70 @@ public class PostingPlanService {
         log.debug("Added posting logs: {}", postingLogs.size());
     }
 
+    public void addPlanFinalization(PostingPlanLog planLog) {
+        log.debug("Add plan finalization: {}", planLog);
+        postingPlanDao.addPlanFinalization(planLog);
+        log.debug("Added plan finalization: {}", planLog.getPlanId());
+    }
+
+    /**
+     * @return Digest of held batches, null if plan not found or its holds are not tracked
+     */
+    public byte[] getPlanDigest(String planId) {
+        log.debug("Get plan digest: {}", planId);
+        return postingPlanDao.getPlanDigest(planId);
+    }
+
+    public AccountDiffs getPlanAccountDiffs(String planId) {
+        log.debug("Get plan account diffs: {}", planId);
+        Map<Long, Long> result = postingPlanDao.getPlanAccountDiffs(planId);
+        log.debug("Got plan account diffs: {}", result);
+        AccountDiffs accountDiffs = new AccountDiffs(result.size());
+        result.forEach(accountDiffs::add);
+        return accountDiffs;
+    }
+
+    public Map<Long, byte[]> getBatchDigests(String planId) {
+        log.debug("Get batch digests: {}", planId);
+        Map<Long, byte[]> result = postingPlanDao.getBatchDigests(planId);
+        log.debug("Got batch digests: {}", result.size());
+        return result;
+    }
+
+    /**
+     * @return Digest of held batch, null if plan is not found, finalized or its holds are not tracked
+     */
+    public byte[] getHeldBatchDigest(String planId, long batchId) {
+        log.debug("Get held batch digest: {}, batch: {}", planId, batchId);
+        return postingPlanDao.getHeldBatchDigest(planId, batchId);
+    }
+
+    public void addPlanBatchSummary(String planId, long batchId, byte[] batchDigest, boolean firstBatch,
+                                    AccountDiffs accountDiffs) {
+        log.debug("Add plan batch summary: {}, batch: {}, first batch: {}", planId, batchId, firstBatch);
+        Map<Long, Long> diffs = new HashMap<>(accountDiffs.size() * 2);
+        for (int i = 0; i < accountDiffs.size(); i++) {
+            diffs.put(accountDiffs.accountIdAt(i), accountDiffs.diffAt(i));
+        }
+        postingPlanDao.addPlanBatchSummary(planId, batchId, batchDigest, firstBatch, diffs);
+        log.debug("Added plan batch summary: {}, accounts: {}", planId, diffs.size());
+    }
+
+    public void deletePlanSummary(String planId) {
+        log.debug("Delete plan summary: {}", planId);
+        int deleted = postingPlanDao.deletePlanSummary(planId);
+        log.debug("Deleted plan summary: {}, rows: {}", planId, deleted);
+    }
+
+    /**
+     * @return Affected accounts, null if operation is not applied and must be processed by regular flow
+     */
+    public Map<Long, StatefulAccount> executePostingOperation(PostingPlanLog planLog, List<PostingLog> postingLogs) {
+        log.debug("Execute server-side posting operation: {}, postings: {}", planLog, postingLogs.size());
+        Map<Long, StatefulAccount> result = postingOperationDao.execute(planLog, postingLogs);
+        log.debug("Executed server-side posting operation, affected accounts: {}", result);
+        return result;
+    }
+
 
 }
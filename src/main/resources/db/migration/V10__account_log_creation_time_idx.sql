@@ -0,0 +1,10 @@
+/*
+  Point-in-time balance lookups: last account log before given time, served by index-only scan.
+  Built concurrently outside of transaction, so account log writes are not blocked during the build.
+  Index left invalid by failed build must be dropped before the migration is repaired and repeated.
+*/
+CREATE INDEX CONCURRENTLY IF NOT EXISTS account_log_acc_id_creation_time_idx
+    ON shm.account_log
+    USING btree
+    (account_id, creation_time, id)
+    INCLUDE (own_accumulated);
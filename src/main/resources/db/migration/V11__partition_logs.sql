@@ -0,0 +1,119 @@
+/*
+  Monthly range partitioning of shm.account_log and shm.posting_log by creation_time.
+  Existing tables are not rewritten: they are attached as the first partitions, covering everything
+  up to the end of the current month (or of the month of the latest record). Partitions of next months
+  are created by shm.create_log_partitions, which is called by the partition maintenance job.
+*/
+
+-- account_log
+ALTER TABLE shm.account_log RENAME TO account_log_legacy;
+DROP TRIGGER IF EXISTS account_log_state_trg ON shm.account_log_legacy;
+ALTER INDEX shm.account_log_pkey RENAME TO account_log_legacy_pkey;
+ALTER INDEX shm.account_log_acc_id RENAME TO account_log_legacy_acc_id;
+ALTER INDEX shm.account_log_pb_idx RENAME TO account_log_legacy_pb_idx;
+ALTER INDEX shm.get_acc_stat_upto_idx RENAME TO account_log_legacy_upto_idx;
+ALTER INDEX shm.account_log_acc_id_creation_time_idx RENAME TO account_log_legacy_acc_id_creation_time_idx;
+
+CREATE TABLE shm.account_log
+(
+  LIKE shm.account_log_legacy INCLUDING DEFAULTS,
+  CONSTRAINT account_log_pkey PRIMARY KEY (id, creation_time)
+) PARTITION BY RANGE (creation_time);
+
+ALTER SEQUENCE shm.account_log_id_seq OWNED BY shm.account_log.id;
+
+CREATE INDEX account_log_acc_id
+  ON shm.account_log
+  USING btree
+  (account_id, id);
+
+CREATE INDEX account_log_pb_idx
+  ON shm.account_log
+  USING btree
+  (plan_id, batch_id, id);
+
+CREATE INDEX get_acc_stat_upto_idx
+  ON shm.account_log
+  USING btree
+  (account_id, plan_id, batch_id);
+
+CREATE INDEX account_log_acc_id_creation_time_idx
+  ON shm.account_log
+  USING btree
+  (account_id, creation_time, id)
+  INCLUDE (own_accumulated);
+
+CREATE TRIGGER account_log_state_trg
+  AFTER INSERT ON shm.account_log
+  FOR EACH ROW EXECUTE PROCEDURE shm.upsert_account_state();
+
+-- posting_log
+ALTER TABLE shm.posting_log RENAME TO posting_log_legacy;
+ALTER INDEX shm.posting_log_pkey RENAME TO posting_log_legacy_pkey;
+ALTER INDEX shm.posting_log_plan_id_idx RENAME TO posting_log_legacy_plan_id_idx;
+
+CREATE TABLE shm.posting_log
+(
+  LIKE shm.posting_log_legacy INCLUDING DEFAULTS,
+  CONSTRAINT posting_log_pkey PRIMARY KEY (id, creation_time)
+) PARTITION BY RANGE (creation_time);
+
+ALTER SEQUENCE shm.posting_log_id_seq OWNED BY shm.posting_log.id;
+
+CREATE INDEX posting_log_plan_id_idx
+  ON shm.posting_log
+  USING btree
+  (plan_id, batch_id);
+
+-- legacy partitions, attach validates bounds with a scan of the legacy tables
+DO $$
+DECLARE
+  legacy_bound TIMESTAMP;
+BEGIN
+  SELECT greatest(date_trunc('month', localtimestamp), date_trunc('month', max(creation_time))) + INTERVAL '1 month'
+    INTO legacy_bound
+    FROM shm.account_log_legacy;
+  EXECUTE format('ALTER TABLE shm.account_log ATTACH PARTITION shm.account_log_legacy FOR VALUES FROM (MINVALUE) TO (%L)',
+                 legacy_bound);
+
+  SELECT greatest(date_trunc('month', localtimestamp), date_trunc('month', max(creation_time))) + INTERVAL '1 month'
+    INTO legacy_bound
+    FROM shm.posting_log_legacy;
+  EXECUTE format('ALTER TABLE shm.posting_log ATTACH PARTITION shm.posting_log_legacy FOR VALUES FROM (MINVALUE) TO (%L)',
+                 legacy_bound);
+END;
+$$;
+
+/*
+  Creates monthly partitions of shm.account_log and shm.posting_log from the current month
+  up to months_ahead months. Months covered by existing partitions are skipped.
+  Returns names of created partitions.
+*/
+CREATE OR REPLACE FUNCTION shm.create_log_partitions(months_ahead INT)
+  RETURNS SETOF TEXT
+LANGUAGE plpgsql
+AS $function$
+DECLARE
+  parent_table TEXT;
+  month_start TIMESTAMP;
+  partition_name TEXT;
+BEGIN
+  FOREACH parent_table IN ARRAY ARRAY['account_log', 'posting_log'] LOOP
+    FOR i IN 0..months_ahead LOOP
+      month_start := date_trunc('month', localtimestamp) + make_interval(months => i);
+      partition_name := parent_table || '_' || to_char(month_start, 'YYYYMM');
+      CONTINUE WHEN to_regclass('shm.' || partition_name) IS NOT NULL;
+      BEGIN
+        EXECUTE format('CREATE TABLE shm.%I PARTITION OF shm.%I FOR VALUES FROM (%L) TO (%L)',
+                       partition_name, parent_table, month_start, month_start + INTERVAL '1 month');
+        RETURN NEXT partition_name;
+      EXCEPTION WHEN invalid_object_definition OR duplicate_table THEN
+        -- month overlaps legacy partition or partition is created concurrently
+        NULL;
+      END;
+    END LOOP;
+  END LOOP;
+END;
+$function$;
+
+SELECT shm.create_log_partitions(3);
@@ -0,0 +1,41 @@
+/*
+  Folds hold logs of closed plans into final plan logs.
+  Hold logs are deleted for log_limit oldest final logs of closed plans (at least min_age old), final logs
+  themselves are kept as checkpoints and marked as merged. Latest account states are not affected, since final log
+  is always newer than plan holds and carries accumulated values. Own amount history is not affected either,
+  since holds don't change own amount. Final logs locked by concurrent compaction are skipped.
+  Returns number of compacted final logs.
+*/
+CREATE OR REPLACE FUNCTION shm.compact_account_logs(log_limit INT, min_age INTERVAL)
+  RETURNS INT
+LANGUAGE plpgsql
+AS $function$
+DECLARE
+  compacted INT;
+BEGIN
+  WITH final_logs AS (
+    SELECT l.id, l.plan_id, l.account_id, l.creation_time
+    FROM shm.account_log l
+    WHERE l.batch_id = 9223372036854775807
+      AND NOT l.merged
+      AND l.creation_time < localtimestamp - min_age
+    ORDER BY l.creation_time
+    LIMIT log_limit
+    FOR UPDATE SKIP LOCKED
+  ), deleted AS (
+    DELETE FROM shm.account_log l
+    USING final_logs f
+    WHERE l.plan_id = f.plan_id
+      AND l.account_id = f.account_id
+      AND l.batch_id <> 9223372036854775807
+      AND l.creation_time <= f.creation_time
+  )
+  UPDATE shm.account_log l
+  SET merged = TRUE
+  FROM final_logs f
+  WHERE l.id = f.id
+    AND l.creation_time = f.creation_time;
+  GET DIAGNOSTICS compacted = ROW_COUNT;
+  RETURN compacted;
+END;
+$function$;
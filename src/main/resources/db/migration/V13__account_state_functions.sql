@@ -0,0 +1,30 @@
+/*
+  Account state functions without account attributes, which are immutable and cached by the service.
+  Accounts without state are omitted.
+*/
+CREATE OR REPLACE FUNCTION shm.get_exclusive_acc_state(ids BIGINT[])
+  RETURNS TABLE(account_id BIGINT, own_accumulated BIGINT, max_accumulated BIGINT, min_accumulated BIGINT)
+LANGUAGE plpgsql
+AS $function$
+BEGIN
+  -- accounts are always locked in id order, so plans sharing accounts can't deadlock on each other
+  PERFORM t.id FROM shm.account t WHERE t.id = any(ids) ORDER BY t.id FOR UPDATE;
+  RETURN QUERY SELECT st.account_id, st.own_accumulated, st.max_accumulated, st.min_accumulated
+    FROM shm.account_state st
+    WHERE st.account_id = any(ids);
+END;
+$function$;
+
+CREATE OR REPLACE FUNCTION shm.get_acc_state_upto(ids BIGINT[], to_plan_id VARCHAR, to_batch_id BIGINT)
+  RETURNS TABLE(account_id BIGINT, own_accumulated BIGINT, max_accumulated BIGINT, min_accumulated BIGINT)
+LANGUAGE plpgsql
+AS $function$
+BEGIN
+  RETURN QUERY SELECT DISTINCT ON (t.account_id) t.account_id, t.own_accumulated, t.max_accumulated, t.min_accumulated
+    FROM shm.account_log t
+    WHERE t.account_id = any(ids)
+      AND t.plan_id = to_plan_id
+      AND t.batch_id = to_batch_id
+    ORDER BY t.account_id, t.id DESC;
+END;
+$function$;
@@ -0,0 +1,16 @@
+/*
+  Held plan summary, which lets commit and rollback skip reading hold postings.
+  shm.plan_log.digest chains digests of held batches in batch id order: sha256(previous digest || batch digest),
+  starting from an empty digest. It stays NULL for plans, which holds were not tracked (held before this migration
+  or held server-side), such plans are finalized by their postings.
+  shm.plan_account_diff keeps net amount diff of held postings per plan account.
+*/
+ALTER TABLE shm.plan_log ADD COLUMN digest BYTEA;
+
+CREATE TABLE shm.plan_account_diff
+(
+  plan_id CHARACTER VARYING(64) NOT NULL,
+  account_id BIGINT NOT NULL,
+  diff BIGINT NOT NULL,
+  CONSTRAINT plan_account_diff_pkey PRIMARY KEY (plan_id, account_id)
+);
@@ -0,0 +1,29 @@
+/*
+  Version check of optimistic lock mode, called before account logs are written. Account states read without locks
+  are locked in id order and compared with their versions at read time (0 for accounts without state).
+  Accounts without state are locked by shm.account row instead, so concurrent first logs of an account conflict too.
+  Returns the first account, which state is changed, NULL if all versions are equal.
+*/
+CREATE OR REPLACE FUNCTION shm.lock_account_state_versions(ids BIGINT[], versions BIGINT[])
+  RETURNS BIGINT
+LANGUAGE plpgsql
+AS $function$
+DECLARE
+  acc_id BIGINT;
+  expected_version BIGINT;
+  actual_version BIGINT;
+BEGIN
+  PERFORM shm.check_account_lock_mode('optimistic');
+  FOR acc_id, expected_version IN SELECT t.id, t.version FROM unnest(ids, versions) t(id, version) ORDER BY t.id LOOP
+    SELECT st.version INTO actual_version FROM shm.account_state st WHERE st.account_id = acc_id FOR UPDATE;
+    IF NOT FOUND THEN
+      PERFORM a.id FROM shm.account a WHERE a.id = acc_id FOR UPDATE;
+      SELECT st.version INTO actual_version FROM shm.account_state st WHERE st.account_id = acc_id;
+    END IF;
+    IF coalesce(actual_version, 0) <> expected_version THEN
+      RETURN acc_id;
+    END IF;
+  END LOOP;
+  RETURN NULL;
+END;
+$function$;
@@ -0,0 +1,236 @@
+/*
+  Plan summary (account diffs and batch digests) is deleted on finalization, plan digest is kept
+  to detect duplicate final requests. Server-side finalizations delete it too.
+*/
+
+-- returns number of deleted rows
+CREATE OR REPLACE FUNCTION shm.delete_plan_summary(plan_id_arg VARCHAR)
+  RETURNS INTEGER
+LANGUAGE sql
+AS $function$
+  WITH diffs AS (DELETE FROM shm.plan_account_diff WHERE plan_id = plan_id_arg RETURNING 1),
+       digests AS (DELETE FROM shm.batch_digest WHERE plan_id = plan_id_arg RETURNING 1)
+  SELECT ((SELECT count(*) FROM diffs) + (SELECT count(*) FROM digests))::INTEGER;
+$function$;
+
+CREATE OR REPLACE FUNCTION shm.do_posting_operation(
+  plan_id_arg VARCHAR,
+  operation_arg shm.posting_operation_type,
+  last_batch_id_arg BIGINT,
+  creation_time_arg TIMESTAMP WITHOUT TIME ZONE,
+  batch_ids BIGINT[],
+  from_ids BIGINT[],
+  to_ids BIGINT[],
+  amounts BIGINT[],
+  curr_sym_codes VARCHAR[],
+  descriptions VARCHAR[]
+)
+  RETURNS TABLE(status VARCHAR, account_id BIGINT, curr_sym_code VARCHAR, creation_time TIMESTAMP WITHOUT TIME ZONE, description VARCHAR, own_accumulated BIGINT, max_accumulated BIGINT, min_accumulated BIGINT)
+LANGUAGE plpgsql
+AS $function$
+#variable_conflict use_column
+DECLARE
+  final_op BOOLEAN := operation_arg <> 'HOLD';
+  prev_op shm.posting_operation_type;
+  saved_op shm.posting_operation_type;
+  updated_plan_id VARCHAR;
+  acc_ids BIGINT[];
+BEGIN
+  SELECT p.last_operation INTO prev_op FROM shm.plan_log p WHERE p.plan_id = plan_id_arg FOR UPDATE;
+
+  IF final_op THEN
+    UPDATE shm.plan_log p SET
+      last_access_time = creation_time_arg,
+      last_operation = operation_arg,
+      last_batch_id = last_batch_id_arg
+    WHERE p.plan_id = plan_id_arg AND p.last_operation IN ('HOLD', operation_arg)
+    RETURNING p.plan_id INTO updated_plan_id;
+  ELSE
+    INSERT INTO shm.plan_log AS p (plan_id, last_batch_id, last_access_time, last_operation)
+    VALUES (plan_id_arg, last_batch_id_arg, creation_time_arg, operation_arg)
+    ON CONFLICT (plan_id) DO UPDATE SET
+      last_access_time = excluded.last_access_time,
+      last_operation = excluded.last_operation,
+      last_batch_id = excluded.last_batch_id,
+      -- batch digests and account diffs are not maintained here, so the plan isn't tracked anymore
+      digest = NULL
+    WHERE p.last_operation = 'HOLD'
+    RETURNING p.plan_id INTO updated_plan_id;
+  END IF;
+
+  IF updated_plan_id IS NULL THEN
+    RETURN QUERY SELECT 'PLAN_NOT_CHANGED'::VARCHAR, NULL::BIGINT, NULL::VARCHAR, NULL::TIMESTAMP, NULL::VARCHAR,
+      NULL::BIGINT, NULL::BIGINT, NULL::BIGINT;
+    RETURN;
+  END IF;
+  prev_op := coalesce(prev_op, 'HOLD');
+  -- finalized plans refer to their hold postings, legacy ones have postings copied with the final operation
+  saved_op := CASE
+    WHEN prev_op <> 'HOLD' AND EXISTS (SELECT 1 FROM shm.plan_finalization f WHERE f.plan_id = plan_id_arg)
+      THEN 'HOLD'
+    ELSE prev_op
+  END;
+
+  -- received batches must be equal to the saved ones, new batches cannot precede saved ones
+  IF EXISTS (
+       SELECT 1 FROM unnest(batch_ids) r(batch_id)
+       WHERE r.batch_id < (SELECT max(s.batch_id) FROM shm.posting_log s
+                           WHERE s.plan_id = plan_id_arg AND s.operation = saved_op)
+         AND NOT EXISTS (SELECT 1 FROM shm.posting_log s
+                         WHERE s.plan_id = plan_id_arg AND s.operation = saved_op AND s.batch_id = r.batch_id)
+     )
+     OR EXISTS (
+       (SELECT r.batch_id, r.from_id, r.to_id, r.amount, r.curr_sym_code, r.description
+        FROM unnest(batch_ids, from_ids, to_ids, amounts, curr_sym_codes, descriptions)
+          r(batch_id, from_id, to_id, amount, curr_sym_code, description)
+        WHERE EXISTS (SELECT 1 FROM shm.posting_log s
+                      WHERE s.plan_id = plan_id_arg AND s.operation = saved_op AND s.batch_id = r.batch_id)
+        EXCEPT ALL
+        SELECT s.batch_id, s.from_account_id, s.to_account_id, s.amount, s.curr_sym_code, s.description
+        FROM shm.posting_log s
+        WHERE s.plan_id = plan_id_arg AND s.operation = saved_op AND s.batch_id = ANY(batch_ids))
+       UNION ALL
+       (SELECT s.batch_id, s.from_account_id, s.to_account_id, s.amount, s.curr_sym_code, s.description
+        FROM shm.posting_log s
+        WHERE s.plan_id = plan_id_arg AND s.operation = saved_op AND s.batch_id = ANY(batch_ids)
+        EXCEPT ALL
+        SELECT r.batch_id, r.from_id, r.to_id, r.amount, r.curr_sym_code, r.description
+        FROM unnest(batch_ids, from_ids, to_ids, amounts, curr_sym_codes, descriptions)
+          r(batch_id, from_id, to_id, amount, curr_sym_code, description))
+     )
+     OR (final_op AND EXISTS (
+       SELECT 1 FROM shm.posting_log s
+       WHERE s.plan_id = plan_id_arg AND s.operation = saved_op AND NOT (s.batch_id = ANY(batch_ids))
+       UNION ALL
+       SELECT 1 FROM unnest(batch_ids) r(batch_id)
+       WHERE NOT EXISTS (SELECT 1 FROM shm.posting_log s
+                         WHERE s.plan_id = plan_id_arg AND s.operation = saved_op AND s.batch_id = r.batch_id)
+     ))
+  THEN
+    RETURN QUERY SELECT 'POSTINGS_NOT_MATCHED'::VARCHAR, NULL::BIGINT, NULL::VARCHAR, NULL::TIMESTAMP, NULL::VARCHAR,
+      NULL::BIGINT, NULL::BIGINT, NULL::BIGINT;
+    RETURN;
+  END IF;
+
+  acc_ids := ARRAY(SELECT DISTINCT unnest(from_ids || to_ids));
+
+  -- duplicate request, no new batches for already applied operation
+  IF prev_op = operation_arg AND NOT EXISTS (
+       SELECT 1 FROM unnest(batch_ids) r(batch_id)
+       WHERE NOT EXISTS (SELECT 1 FROM shm.posting_log s
+                         WHERE s.plan_id = plan_id_arg AND s.operation = saved_op AND s.batch_id = r.batch_id)
+     )
+  THEN
+    RETURN QUERY SELECT 'OK'::VARCHAR, st.account_id, st.curr_sym_code, st.creation_time, st.description,
+      coalesce(st.own_accumulated, 0), coalesce(st.max_accumulated, 0), coalesce(st.min_accumulated, 0)
+    FROM shm.get_acc_stat_upto(acc_ids, plan_id_arg,
+                               CASE WHEN final_op THEN 9223372036854775807 ELSE last_batch_id_arg END) st;
+    RETURN;
+  END IF;
+
+  -- server-side operations lock account rows (see shm.check_account_lock_mode)
+  PERFORM shm.check_account_lock_mode('row');
+  PERFORM a.id FROM shm.account a WHERE a.id = ANY(acc_ids) ORDER BY a.id FOR UPDATE;
+
+  IF EXISTS (
+       SELECT 1 FROM unnest(batch_ids, from_ids, to_ids, curr_sym_codes) r(batch_id, from_id, to_id, curr_sym_code)
+       WHERE NOT EXISTS (SELECT 1 FROM shm.posting_log s
+                         WHERE s.plan_id = plan_id_arg AND s.operation = saved_op AND s.batch_id = r.batch_id)
+         AND (NOT EXISTS (SELECT 1 FROM shm.account a WHERE a.id = r.from_id AND a.curr_sym_code = r.curr_sym_code)
+           OR NOT EXISTS (SELECT 1 FROM shm.account a WHERE a.id = r.to_id AND a.curr_sym_code = r.curr_sym_code))
+     )
+  THEN
+    RETURN QUERY SELECT 'ACCOUNTS_NOT_MATCHED'::VARCHAR, NULL::BIGINT, NULL::VARCHAR, NULL::TIMESTAMP, NULL::VARCHAR,
+      NULL::BIGINT, NULL::BIGINT, NULL::BIGINT;
+    RETURN;
+  END IF;
+
+  IF final_op THEN
+    INSERT INTO shm.plan_finalization(plan_id, operation, creation_time)
+    VALUES (plan_id_arg, operation_arg, creation_time_arg);
+    PERFORM shm.delete_plan_summary(plan_id_arg);
+  ELSE
+    INSERT INTO shm.posting_log(plan_id, batch_id, from_account_id, to_account_id, creation_time, amount,
+                                curr_sym_code, operation, description)
+    SELECT plan_id_arg, r.batch_id, r.from_id, r.to_id, creation_time_arg, r.amount, r.curr_sym_code, operation_arg,
+           r.description
+    FROM unnest(batch_ids, from_ids, to_ids, amounts, curr_sym_codes, descriptions)
+      r(batch_id, from_id, to_id, amount, curr_sym_code, description);
+  END IF;
+
+  IF NOT final_op THEN
+    RETURN QUERY
+      WITH new_diff AS (
+        SELECT d.acc_id, sum(d.amount)::BIGINT AS diff
+        FROM (SELECT r.from_id AS acc_id, -r.amount AS amount FROM unnest(from_ids, amounts) r(from_id, amount)
+              UNION ALL
+              SELECT r.to_id, r.amount FROM unnest(to_ids, amounts) r(to_id, amount)) d
+        GROUP BY d.acc_id
+      ), saved_diff AS (
+        SELECT d.acc_id, sum(d.amount)::BIGINT AS diff
+        FROM (SELECT s.from_account_id AS acc_id, -s.amount AS amount FROM shm.posting_log s
+              WHERE s.plan_id = plan_id_arg AND s.operation = saved_op AND NOT (s.batch_id = ANY(batch_ids))
+              UNION ALL
+              SELECT s.to_account_id, s.amount FROM shm.posting_log s
+              WHERE s.plan_id = plan_id_arg AND s.operation = saved_op AND NOT (s.batch_id = ANY(batch_ids))) d
+        GROUP BY d.acc_id
+      ), hold_diff AS (
+        SELECT n.acc_id, n.diff AS new_diff,
+          CASE
+            WHEN sd.diff IS NULL THEN CASE WHEN n.diff < 0 THEN n.diff ELSE 0 END
+            WHEN (sd.diff < 0) <> (sd.diff + n.diff < 0) THEN CASE WHEN sd.diff < 0 THEN -sd.diff ELSE sd.diff + n.diff END
+            WHEN sd.diff + n.diff < 0 THEN n.diff
+            ELSE 0
+          END AS neg_diff,
+          CASE
+            WHEN sd.diff IS NULL THEN CASE WHEN n.diff > 0 THEN n.diff ELSE 0 END
+            WHEN (sd.diff < 0) <> (sd.diff + n.diff < 0) THEN CASE WHEN sd.diff < 0 THEN sd.diff + n.diff ELSE -sd.diff END
+            WHEN sd.diff + n.diff < 0 THEN 0
+            ELSE n.diff
+          END AS pos_diff
+        FROM new_diff n LEFT JOIN saved_diff sd ON sd.acc_id = n.acc_id
+      ), ins AS (
+        INSERT INTO shm.account_log(plan_id, batch_id, account_id, operation, own_accumulated, max_accumulated,
+                                    min_accumulated, own_diff, min_diff, max_diff, creation_time, credit, merged)
+        SELECT plan_id_arg, last_batch_id_arg, h.acc_id, operation_arg,
+               coalesce(st.own_accumulated, 0),
+               coalesce(st.max_accumulated, 0) + h.pos_diff,
+               coalesce(st.min_accumulated, 0) + h.neg_diff,
+               0, h.neg_diff, h.pos_diff, creation_time_arg, h.new_diff < 0, FALSE
+        FROM hold_diff h LEFT JOIN shm.account_state st ON st.account_id = h.acc_id
+        RETURNING *
+      )
+      SELECT 'OK'::VARCHAR, a.id, a.curr_sym_code, a.creation_time, a.description,
+             i.own_accumulated, i.max_accumulated, i.min_accumulated
+      FROM ins i JOIN shm.account a ON a.id = i.account_id;
+  ELSE
+    RETURN QUERY
+      WITH new_diff AS (
+        SELECT d.acc_id, sum(d.amount)::BIGINT AS diff
+        FROM (SELECT r.from_id AS acc_id, -r.amount AS amount FROM unnest(from_ids, amounts) r(from_id, amount)
+              UNION ALL
+              SELECT r.to_id, r.amount FROM unnest(to_ids, amounts) r(to_id, amount)) d
+        GROUP BY d.acc_id
+      ), final_diff AS (
+        SELECT n.acc_id, n.diff AS new_diff,
+          CASE WHEN operation_arg = 'COMMIT' THEN n.diff ELSE 0 END AS own_diff,
+          CASE WHEN n.diff < 0 THEN -n.diff ELSE 0 END AS neg_diff,
+          CASE WHEN n.diff > 0 THEN -n.diff ELSE 0 END AS pos_diff
+        FROM new_diff n
+      ), ins AS (
+        INSERT INTO shm.account_log(plan_id, batch_id, account_id, operation, own_accumulated, max_accumulated,
+                                    min_accumulated, own_diff, min_diff, max_diff, creation_time, credit, merged)
+        SELECT plan_id_arg, 9223372036854775807, f.acc_id, operation_arg,
+               coalesce(st.own_accumulated, 0) + f.own_diff,
+               coalesce(st.max_accumulated, 0) + f.pos_diff,
+               coalesce(st.min_accumulated, 0) + f.neg_diff,
+               f.own_diff, f.neg_diff, f.pos_diff, creation_time_arg, f.new_diff < 0, FALSE
+        FROM final_diff f LEFT JOIN shm.account_state st ON st.account_id = f.acc_id
+        RETURNING *
+      )
+      SELECT 'OK'::VARCHAR, a.id, a.curr_sym_code, a.creation_time, a.description,
+             i.own_accumulated, i.max_accumulated, i.min_accumulated
+      FROM ins i JOIN shm.account a ON a.id = i.account_id;
+  END IF;
+END;
+$function$;
@@ -0,0 +1,42 @@
+/*
+  Final (commit or rollback) logs of plans, which are not compacted yet (see shm.compact_account_logs).
+  Runs outside of transaction to build the index without blocking account log writes: partitioned index is created
+  invalid on the parent only, the legacy partition, which holds most of the logs, is indexed concurrently,
+  monthly and default partitions, which hold at most a month of logs, are indexed in place and attached
+  in one short transaction. Parent index is valid when all partition indexes are attached, partitions created later
+  get the index on creation.
+  Index left invalid by failed concurrent build must be dropped before the migration is repaired and repeated.
+*/
+CREATE INDEX IF NOT EXISTS account_log_not_merged_final_idx
+  ON ONLY shm.account_log
+  USING btree
+  (creation_time)
+  WHERE batch_id = 9223372036854775807 AND NOT merged;
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS account_log_legacy_not_merged_final_idx
+  ON shm.account_log_legacy
+  USING btree
+  (creation_time)
+  WHERE batch_id = 9223372036854775807 AND NOT merged;
+
+DO $$
+DECLARE
+  partition_name TEXT;
+BEGIN
+  PERFORM set_config('lock_timeout', '10s', true);
+  FOR partition_name IN
+    SELECT c.relname::TEXT FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid
+    WHERE i.inhparent = 'shm.account_log'::regclass
+  LOOP
+    EXECUTE format('CREATE INDEX IF NOT EXISTS %I ON shm.%I USING btree (creation_time) ' ||
+                   'WHERE batch_id = 9223372036854775807 AND NOT merged',
+                   partition_name || '_not_merged_final_idx', partition_name);
+    IF NOT EXISTS (SELECT 1 FROM pg_inherits i
+                   WHERE i.inhparent = 'shm.account_log_not_merged_final_idx'::regclass
+                     AND i.inhrelid = ('shm.' || partition_name || '_not_merged_final_idx')::regclass) THEN
+      EXECUTE format('ALTER INDEX shm.account_log_not_merged_final_idx ATTACH PARTITION shm.%I',
+                     partition_name || '_not_merged_final_idx');
+    END IF;
+  END LOOP;
+END;
+$$;
@@ -0,0 +1,39 @@
+ALTER TABLE shm.account ADD COLUMN IF NOT EXISTS parent_id BIGINT NULL;
+ALTER TABLE shm.account ADD COLUMN IF NOT EXISTS stripe_count INT NOT NULL DEFAULT 1;
+
+CREATE INDEX IF NOT EXISTS account_parent_id_idx
+    ON shm.account
+    USING btree
+    (parent_id, id)
+    WHERE parent_id IS NOT NULL;
+
+/*
+  Turns a logical account into a striped one: the account row itself stays the first stripe,
+  (stripes - 1) additional stripe rows are created with parent_id pointing to it.
+  Every stripe has its own row lock and its own account_log chain; balances are the sum over all stripes.
+  Stripe count is immutable once set.
+*/
+CREATE OR REPLACE FUNCTION shm.create_account_stripes(acc_id BIGINT, stripes INT)
+  RETURNS SETOF BIGINT
+LANGUAGE plpgsql
+AS $function$
+BEGIN
+  IF stripes < 2 THEN
+    RAISE EXCEPTION 'Stripe count must be greater than 1, got: %', stripes;
+  END IF;
+  UPDATE shm.account SET stripe_count = stripes
+  WHERE id = acc_id AND parent_id IS NULL AND stripe_count = 1;
+  IF NOT FOUND THEN
+    RAISE EXCEPTION 'Account % not found, is a stripe itself or is already striped', acc_id;
+  END IF;
+  RETURN QUERY
+    WITH stripe AS (
+      INSERT INTO shm.account(curr_sym_code, creation_time, description, parent_id)
+      SELECT a.curr_sym_code, a.creation_time, a.description, a.id
+      FROM shm.account a, generate_series(2, stripes)
+      WHERE a.id = acc_id
+      RETURNING id
+    )
+    SELECT stripe.id FROM stripe;
+END;
+$function$;
@@ -0,0 +1,59 @@
+CREATE TABLE IF NOT EXISTS shm.account_state
+(
+  account_id BIGINT NOT NULL,
+  own_accumulated BIGINT NOT NULL,
+  max_accumulated BIGINT NOT NULL,
+  min_accumulated BIGINT NOT NULL,
+  last_log_id BIGINT NOT NULL,
+  version BIGINT NOT NULL DEFAULT 1,
+  CONSTRAINT account_state_pkey PRIMARY KEY (account_id)
+);
+
+/*
+  Keeps shm.account_state equal to the latest shm.account_log record of every account.
+  Runs in the transaction of the account log insert, whatever the writer is.
+*/
+CREATE OR REPLACE FUNCTION shm.upsert_account_state()
+  RETURNS TRIGGER
+LANGUAGE plpgsql
+AS $function$
+BEGIN
+  INSERT INTO shm.account_state AS st (account_id, own_accumulated, max_accumulated, min_accumulated, last_log_id)
+  VALUES (NEW.account_id, NEW.own_accumulated, NEW.max_accumulated, NEW.min_accumulated, NEW.id)
+  ON CONFLICT (account_id) DO UPDATE SET
+    own_accumulated = excluded.own_accumulated,
+    max_accumulated = excluded.max_accumulated,
+    min_accumulated = excluded.min_accumulated,
+    last_log_id = excluded.last_log_id,
+    version = st.version + 1
+  WHERE st.last_log_id < excluded.last_log_id;
+  RETURN NULL;
+END;
+$function$;
+
+DROP TRIGGER IF EXISTS account_log_state_trg ON shm.account_log;
+CREATE TRIGGER account_log_state_trg
+  AFTER INSERT ON shm.account_log
+  FOR EACH ROW EXECUTE PROCEDURE shm.upsert_account_state();
+
+INSERT INTO shm.account_state AS st (account_id, own_accumulated, max_accumulated, min_accumulated, last_log_id)
+SELECT DISTINCT ON (al.account_id) al.account_id, al.own_accumulated, al.max_accumulated, al.min_accumulated, al.id
+FROM shm.account_log al
+ORDER BY al.account_id, al.id DESC
+ON CONFLICT (account_id) DO UPDATE SET
+  own_accumulated = excluded.own_accumulated,
+  max_accumulated = excluded.max_accumulated,
+  min_accumulated = excluded.min_accumulated,
+  last_log_id = excluded.last_log_id
+WHERE st.last_log_id < excluded.last_log_id;
+
+CREATE OR REPLACE FUNCTION shm.get_acc_stat(ids bigint[])
+  RETURNS TABLE(account_id bigint, curr_sym_code character varying, creation_time timestamp without time zone, description character varying, own_accumulated bigint, max_accumulated bigint, min_accumulated bigint)
+LANGUAGE plpgsql
+AS $function$
+BEGIN
+  return query select ac.id, ac.curr_sym_code, ac.creation_time, ac.description, st.own_accumulated, st.max_accumulated, st.min_accumulated from shm.account ac
+    LEFT JOIN shm.account_state st on st.account_id = ac.id
+  where ac.id = any(ids);
+END;
+$function$;
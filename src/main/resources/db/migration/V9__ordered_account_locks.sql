@@ -0,0 +1,10 @@
+CREATE OR REPLACE FUNCTION shm.get_exclusive_acc_stat(ids BIGINT[])
+  RETURNS table(account_id bigint, curr_sym_code varchar, creation_time timestamp without time zone, description VARCHAR, own_accumulated bigint, max_accumulated bigint, min_accumulated BIGINT)
+LANGUAGE plpgsql
+AS $function$
+BEGIN
+  -- accounts are always locked in id order, so plans sharing accounts can't deadlock on each other
+  PERFORM t.id FROM shm.account t WHERE t.id = any(ids) ORDER BY t.id FOR UPDATE;
+  return QUERY (select * FROM shm.get_acc_stat(ids));
+END;
+$function$;
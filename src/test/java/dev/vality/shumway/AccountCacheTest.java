@@ -0,0 +1,56 @@
+package dev.vality.shumway;
+
+import dev.vality.damsel.accounter.Account;
+import dev.vality.damsel.accounter.AccountPrototype;
+import dev.vality.damsel.accounter.AccounterSrv;
+import dev.vality.damsel.accounter.InvalidPostingParams;
+import dev.vality.damsel.accounter.Posting;
+import dev.vality.damsel.accounter.PostingBatch;
+import dev.vality.damsel.accounter.PostingPlan;
+import dev.vality.damsel.accounter.PostingPlanChange;
+import dev.vality.damsel.accounter.PostingPlanLog;
+import org.apache.thrift.TException;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import static java.util.Arrays.asList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@PostgresqlSpringBootITest
+public class AccountCacheTest {
+
+    @Autowired
+    private AccounterSrv.Iface client;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void testAccountAttributesAreCached() throws TException {
+        AccountPrototype prototype = new AccountPrototype("RUB");
+        prototype.setDescription("cached");
+        long fromAccountId = client.createAccount(prototype);
+        long toAccountId = client.createAccount(prototype);
+        Account fromAccount = client.getAccountByID(fromAccountId);
+        assertEquals("cached", fromAccount.getDescription());
+
+        jdbcTemplate.update("update shm.account set description = 'changed' where id = ?", fromAccountId);
+        assertEquals(fromAccount, client.getAccountByID(fromAccountId));
+
+        String planId = "account_cache_" + System.currentTimeMillis();
+        PostingBatch batch = new PostingBatch(1, asList(new Posting(fromAccountId, toAccountId, 10, "RUB", "Desc")));
+        client.hold(new PostingPlanChange(planId, batch));
+        PostingPlanLog planLog = client.commitPlan(new PostingPlan(planId, asList(batch)));
+        assertEquals("cached", planLog.getAffectedAccounts().get(fromAccountId).getDescription());
+        assertEquals(fromAccount.getCreationTime(), planLog.getAffectedAccounts().get(fromAccountId).getCreationTime());
+        assertEquals(-10L, planLog.getAffectedAccounts().get(fromAccountId).getOwnAmount());
+        assertEquals(10L, client.getAccountByID(toAccountId).getOwnAmount());
+
+        PostingBatch wrongCurrencyBatch =
+                new PostingBatch(1, asList(new Posting(fromAccountId, toAccountId, 10, "USD", "Desc")));
+        assertThrows(InvalidPostingParams.class,
+                () -> client.hold(new PostingPlanChange(planId + "_usd", wrongCurrencyBatch)));
+    }
+}
@@ -0,0 +1,73 @@
+package dev.vality.shumway;
+
+import dev.vality.damsel.accounter.Account;
+import dev.vality.damsel.accounter.AccountPrototype;
+import dev.vality.damsel.accounter.AccounterSrv;
+import dev.vality.damsel.accounter.Posting;
+import dev.vality.damsel.accounter.PostingBatch;
+import dev.vality.damsel.accounter.PostingPlan;
+import dev.vality.damsel.accounter.PostingPlanChange;
+import dev.vality.damsel.accounter.PostingPlanLog;
+import dev.vality.geck.common.util.TypeUtil;
+import dev.vality.shumway.dao.AccountDao;
+import org.apache.thrift.TException;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Instant;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@PostgresqlSpringBootITest
+public class AccountLogCompactionTest {
+
+    @Autowired
+    private AccounterSrv.Iface client;
+
+    @Autowired
+    private AccountDao accountDao;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void testClosedPlanHoldsAreCompacted() throws TException {
+        long fromAccountId = client.createAccount(new AccountPrototype("RUB"));
+        long toAccountId = client.createAccount(new AccountPrototype("RUB"));
+        String planId = "compaction_" + System.currentTimeMillis();
+        PostingBatch batch1 = new PostingBatch(1, asList(new Posting(fromAccountId, toAccountId, 10, "RUB", "1")));
+        PostingBatch batch2 = new PostingBatch(2, asList(new Posting(fromAccountId, toAccountId, 5, "RUB", "2")));
+        client.hold(new PostingPlanChange(planId, batch1));
+        client.hold(new PostingPlanChange(planId, batch2));
+        PostingPlan plan = new PostingPlan(planId, asList(batch1, batch2));
+        PostingPlanLog commitLog = client.commitPlan(plan);
+
+        String openPlanId = planId + "_open";
+        client.hold(new PostingPlanChange(openPlanId, batch1));
+
+        Account fromAccount = client.getAccountByID(fromAccountId);
+        String now = TypeUtil.temporalToString(Instant.now().plusSeconds(1));
+        long balance = client.getAccountBalance(fromAccountId, now);
+
+        int compacted;
+        do {
+            compacted = accountDao.compactLogs(100, 0);
+        } while (compacted > 0);
+
+        assertEquals(List.of(Long.MAX_VALUE, Long.MAX_VALUE), jdbcTemplate.queryForList(
+                "select batch_id from shm.account_log where plan_id = ? and merged", Long.class, planId));
+        assertEquals(0L, jdbcTemplate.queryForObject(
+                "select count(*) from shm.account_log where plan_id = ? and not merged", Long.class, planId));
+        assertEquals(2L, jdbcTemplate.queryForObject(
+                "select count(*) from shm.account_log where plan_id = ?", Long.class, openPlanId));
+
+        assertEquals(fromAccount, client.getAccountByID(fromAccountId));
+        assertEquals(balance, client.getAccountBalance(fromAccountId, now));
+        assertEquals(commitLog, client.commitPlan(plan));
+        assertTrue(fromAccount.getMinAvailableAmount() < fromAccount.getOwnAmount());
+    }
+}
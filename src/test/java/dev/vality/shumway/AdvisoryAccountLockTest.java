@@ -0,0 +1,12 @@
+package dev.vality.shumway;
+
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * Runs the whole accounter scenario suite with advisory account locks.
+ */
+@PostgresqlSpringBootITest
+@TestPropertySource(properties = {"account.locking.mode=advisory", "account.locking.switch_on_startup=true"})
+public class AdvisoryAccountLockTest extends ShumwayApplicationTests {
+
+}
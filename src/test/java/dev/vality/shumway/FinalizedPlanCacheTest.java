@@ -0,0 +1,49 @@
+package dev.vality.shumway;
+
+import dev.vality.damsel.accounter.AccountPrototype;
+import dev.vality.damsel.accounter.AccounterSrv;
+import dev.vality.damsel.accounter.Posting;
+import dev.vality.damsel.accounter.PostingBatch;
+import dev.vality.damsel.accounter.PostingPlan;
+import dev.vality.damsel.accounter.PostingPlanChange;
+import org.apache.thrift.TException;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import static java.util.Arrays.asList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@PostgresqlSpringBootITest
+public class FinalizedPlanCacheTest {
+
+    @Autowired
+    private AccounterSrv.Iface client;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void testFinalizedPlanIsCached() throws TException {
+        long fromAccountId = client.createAccount(new AccountPrototype("RUB"));
+        long toAccountId = client.createAccount(new AccountPrototype("RUB"));
+        String planId = "plan_cache_" + System.currentTimeMillis();
+        PostingBatch batch1 = new PostingBatch(1, asList(new Posting(fromAccountId, toAccountId, 10, "RUB", "1")));
+        PostingBatch batch2 = new PostingBatch(2, asList(new Posting(fromAccountId, toAccountId, 5, "RUB", "2")));
+
+        client.hold(new PostingPlanChange(planId, batch1));
+        assertEquals(new PostingPlan(planId, asList(batch1)), client.getPlan(planId));
+        client.hold(new PostingPlanChange(planId, batch2));
+        PostingPlan plan = new PostingPlan(planId, asList(batch1, batch2));
+        assertEquals(plan, client.getPlan(planId));
+
+        client.commitPlan(plan);
+        PostingPlan committedPlan = client.getPlan(planId);
+        assertEquals(plan, committedPlan);
+
+        jdbcTemplate.update("delete from shm.posting_log where plan_id = ?", planId);
+        assertEquals(committedPlan, client.getPlan(planId));
+        client.getPlan(planId).getBatchList().clear();
+        assertEquals(committedPlan, client.getPlan(planId));
+    }
+}
@@ -0,0 +1,143 @@
+package dev.vality.shumway;
+
+import dev.vality.damsel.accounter.AccountPrototype;
+import dev.vality.damsel.accounter.AccounterSrv;
+import dev.vality.damsel.accounter.Posting;
+import dev.vality.damsel.accounter.PostingBatch;
+import dev.vality.damsel.accounter.PostingPlanChange;
+import dev.vality.damsel.accounter.PostingPlanLog;
+import dev.vality.shumway.dao.AccountDao;
+import dev.vality.shumway.dao.AccountStateConflictException;
+import dev.vality.shumway.handler.TransactionRetrier;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.thrift.TException;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Runs the whole accounter scenario suite with optimistic account state versions.
+ */
+@PostgresqlSpringBootITest
+@TestPropertySource(properties = {
+        "account.locking.mode=optimistic",
+        "account.locking.switch_on_startup=true",
+        "account.locking.optimistic_enabled=true"
+})
+public class OptimisticAccountLockTest extends ShumwayApplicationTests {
+
+    @Autowired
+    private AccountDao accountDao;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    public void testStaleStateVersionConflicts() throws TException {
+        AccounterSrv.Iface client = createClient("http://localhost:" + port + "/accounter");
+        long fromAccountId = client.createAccount(new AccountPrototype("RUB"));
+        long toAccountId = client.createAccount(new AccountPrototype("RUB"));
+        assertEquals(0L, accountDao.getStatefulExclusive(List.of(fromAccountId)).get(fromAccountId)
+                .getAccountState().getVersion());
+
+        String planId = "optimistic_" + System.currentTimeMillis();
+        client.hold(new PostingPlanChange(planId,
+                new PostingBatch(1, List.of(new Posting(fromAccountId, toAccountId, 10, "RUB", "1")))));
+        long version = accountDao.getExclusiveAccountStates(List.of(fromAccountId)).get(fromAccountId).getVersion();
+        assertEquals(version, accountDao.getStatefulExclusive(List.of(fromAccountId)).get(fromAccountId)
+                .getAccountState().getVersion());
+
+        AccountStateConflictException e = assertThrows(AccountStateConflictException.class,
+                () -> accountDao.addLogs(Collections.emptyList(), Map.of(fromAccountId, 0L)));
+        assertEquals(fromAccountId, e.getAccountId());
+        long toVersion = accountDao.getExclusiveAccountStates(List.of(toAccountId)).get(toAccountId).getVersion();
+        client.hold(new PostingPlanChange(planId,
+                new PostingBatch(2, List.of(new Posting(fromAccountId, toAccountId, 5, "RUB", "2")))));
+        assertThrows(AccountStateConflictException.class,
+                () -> accountDao.addLogs(Collections.emptyList(), Map.of(toAccountId, toVersion)));
+    }
+
+    @Test
+    public void testConcurrentHoldConflictIsRetried() throws Exception {
+        String url = "http://localhost:" + port + "/accounter";
+        AccounterSrv.Iface client = createClient(url);
+        long fromAccountId = client.createAccount(new AccountPrototype("RUB"));
+        long toAccountId = client.createAccount(new AccountPrototype("RUB"));
+        String planId = "optimistic_concurrent_" + System.currentTimeMillis();
+        client.hold(new PostingPlanChange(planId + "_0",
+                new PostingBatch(1, List.of(new Posting(fromAccountId, toAccountId, 1, "RUB", "0")))));
+        double retries = getConflictRetries();
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try (Connection connection = dataSource.getConnection()) {
+            // both holds read the same state version and wait for its lock, the first one to write it
+            // makes the other conflict
+            connection.setAutoCommit(false);
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "select version from shm.account_state where account_id = ? for update")) {
+                statement.setLong(1, fromAccountId);
+                statement.executeQuery().close();
+            }
+            List<Future<PostingPlanLog>> holds = new ArrayList<>();
+            for (int i = 1; i <= 2; i++) {
+                PostingPlanChange change = new PostingPlanChange(planId + "_" + i,
+                        new PostingBatch(1, List.of(new Posting(fromAccountId, toAccountId, 5, "RUB", "" + i))));
+                holds.add(executor.submit(() -> createClient(url).hold(change)));
+            }
+            awaitLockWaiters(2);
+            connection.commit();
+            for (Future<PostingPlanLog> hold : holds) {
+                hold.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertTrue(getConflictRetries() > retries);
+        assertEquals(-11, client.getAccountByID(fromAccountId).getMinAvailableAmount());
+        assertEquals(11, client.getAccountByID(toAccountId).getMaxAvailableAmount());
+    }
+
+    private double getConflictRetries() {
+        Counter counter = meterRegistry.find(TransactionRetrier.RETRY_METRIC)
+                .tag("reason", TransactionRetrier.ACCOUNT_STATE_CONFLICT)
+                .counter();
+        return counter == null ? 0 : counter.count();
+    }
+
+    private void awaitLockWaiters(int waiters) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (jdbcTemplate.queryForObject("select count(*) from pg_locks where not granted", Integer.class)
+                < waiters) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Holds are not waiting for account state lock");
+            }
+            Thread.sleep(50);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package dev.vality.shumway;
+
+import dev.vality.shumway.dao.PartitionDao;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@PostgresqlSpringBootITest
+public class PartitionMaintenanceTest {
+
+    @Autowired
+    private PartitionDao partitionDao;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void testPartitionsAreCreatedAhead() {
+        // UTC months of database clock, the month is taken before creation to be covered even if it changes
+        String lastMonth = jdbcTemplate.queryForObject(
+                "select to_char((now() at time zone 'utc') + interval '3 month', 'YYYYMM')", String.class);
+        partitionDao.createPartitions(3);
+        assertEquals(List.of(), partitionDao.createPartitions(3));
+
+        for (String table : List.of("account_log", "posting_log")) {
+            List<String> partitions = jdbcTemplate.queryForList(
+                    "select c.relname::text from pg_inherits i " +
+                            "join pg_class c on c.oid = i.inhrelid " +
+                            "where i.inhparent = ('shm.' || ?)::regclass",
+                    String.class, table);
+            assertTrue(partitions.contains(table + "_legacy"), table + " legacy partition is expected");
+            assertTrue(partitions.contains(table + "_default"), table + " default partition is expected");
+            assertTrue(partitions.contains(table + "_" + lastMonth), table + " partition of " + lastMonth +
+                    " is expected");
+        }
+    }
+
+    @Test
+    public void testPlanLookupSkipsOlderPartitions() {
+        partitionDao.createPartitions(3);
+        String planId = "partition_pruning_" + System.currentTimeMillis();
+        jdbcTemplate.update("insert into shm.plan_log(plan_id, last_batch_id, last_access_time, last_operation, " +
+                "creation_time) values (?, 1, now() at time zone 'utc', 'HOLD', " +
+                "date_trunc('month', now() at time zone 'utc') + interval '3 month')", planId);
+
+        String plan = String.join("\n", jdbcTemplate.queryForList(
+                "explain (analyze, costs off) select id from shm.posting_log " +
+                        "where plan_id = ? and creation_time >= shm.plan_log_time_bound(?)",
+                String.class, planId, planId));
+        assertFalse(plan.contains("posting_log_legacy"), plan);
+    }
+}
@@ -0,0 +1,57 @@
+package dev.vality.shumway;
+
+import dev.vality.damsel.accounter.AccountPrototype;
+import dev.vality.damsel.accounter.AccounterSrv;
+import dev.vality.damsel.accounter.InvalidPostingParams;
+import dev.vality.damsel.accounter.Posting;
+import dev.vality.damsel.accounter.PostingBatch;
+import dev.vality.damsel.accounter.PostingPlan;
+import dev.vality.damsel.accounter.PostingPlanChange;
+import dev.vality.damsel.accounter.PostingPlanLog;
+import dev.vality.damsel.base.InvalidRequest;
+import org.apache.thrift.TException;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import static java.util.Arrays.asList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@PostgresqlSpringBootITest
+public class PlanFinalizationTest {
+
+    @Autowired
+    private AccounterSrv.Iface client;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void testCommitRefersHoldPostings() throws TException {
+        long fromAccountId = client.createAccount(new AccountPrototype("RUB"));
+        long toAccountId = client.createAccount(new AccountPrototype("RUB"));
+        String planId = "plan_finalization_" + System.currentTimeMillis();
+        PostingBatch batch1 = new PostingBatch(1, asList(new Posting(fromAccountId, toAccountId, 10, "RUB", "1")));
+        PostingBatch batch2 = new PostingBatch(2, asList(new Posting(fromAccountId, toAccountId, 5, "RUB", "2")));
+        client.hold(new PostingPlanChange(planId, batch1));
+        client.hold(new PostingPlanChange(planId, batch2));
+
+        PostingPlan plan = new PostingPlan(planId, asList(batch1, batch2));
+        PostingPlanLog planLog = client.commitPlan(plan);
+        assertEquals(-15L, planLog.getAffectedAccounts().get(fromAccountId).getOwnAmount());
+        assertEquals(15L, planLog.getAffectedAccounts().get(toAccountId).getOwnAmount());
+        assertEquals(Integer.valueOf(2), jdbcTemplate.queryForObject(
+                "select count(*) from shm.posting_log where plan_id = ?", Integer.class, planId));
+        assertEquals("COMMIT", jdbcTemplate.queryForObject(
+                "select operation::varchar from shm.plan_finalization where plan_id = ?", String.class, planId));
+
+        assertEquals(planLog, client.commitPlan(plan));
+        assertEquals(plan, client.getPlan(planId));
+        PostingBatch changedBatch2 =
+                new PostingBatch(2, asList(new Posting(fromAccountId, toAccountId, 6, "RUB", "2")));
+        assertThrows(InvalidPostingParams.class,
+                () -> client.commitPlan(new PostingPlan(planId, asList(batch1, changedBatch2))));
+        assertThrows(InvalidRequest.class, () -> client.rollbackPlan(plan));
+    }
+}
@@ -0,0 +1,174 @@
+package dev.vality.shumway;
+
+import dev.vality.damsel.accounter.Account;
+import dev.vality.damsel.accounter.AccountPrototype;
+import dev.vality.damsel.accounter.AccounterSrv;
+import dev.vality.damsel.accounter.InvalidPostingParams;
+import dev.vality.damsel.accounter.Posting;
+import dev.vality.damsel.accounter.PostingBatch;
+import dev.vality.damsel.accounter.PostingPlan;
+import dev.vality.damsel.accounter.PostingPlanChange;
+import dev.vality.damsel.accounter.PostingPlanLog;
+import org.apache.thrift.TException;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.time.Duration;
+
+import static java.util.Arrays.asList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+@PostgresqlSpringBootITest
+public class PlanSummaryTest {
+
+    @Autowired
+    private AccounterSrv.Iface client;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Test
+    public void testHoldComparesBatchDigests() throws TException {
+        long fromAccountId = client.createAccount(new AccountPrototype("RUB"));
+        long toAccountId = client.createAccount(new AccountPrototype("RUB"));
+        String planId = "batch_digest_" + System.currentTimeMillis();
+        PostingBatch batch1 = new PostingBatch(1, asList(
+                new Posting(fromAccountId, toAccountId, 10, "RUB", "1"),
+                new Posting(toAccountId, fromAccountId, 3, "RUB", "2")));
+        PostingBatch batch2 = new PostingBatch(2, asList(new Posting(fromAccountId, toAccountId, 5, "RUB", "3")));
+        PostingPlanLog holdLog = client.hold(new PostingPlanChange(planId, batch1));
+        client.hold(new PostingPlanChange(planId, batch2));
+        assertEquals(Integer.valueOf(2), jdbcTemplate.queryForObject(
+                "select count(*) from shm.batch_digest where plan_id = ?", Integer.class, planId));
+
+        PostingBatch changedBatch1 = new PostingBatch(1, asList(
+                new Posting(fromAccountId, toAccountId, 10, "RUB", "1"),
+                new Posting(toAccountId, fromAccountId, 4, "RUB", "2")));
+        InvalidPostingParams e = assertThrows(InvalidPostingParams.class,
+                () -> client.hold(new PostingPlanChange(planId, changedBatch1)));
+        assertEquals(2, e.getWrongPostingsSize());
+
+        // matched digest doesn't need held postings
+        jdbcTemplate.update("delete from shm.posting_log where plan_id = ?", planId);
+        PostingBatch reorderedBatch1 = new PostingBatch(1, asList(batch1.getPostings().get(1),
+                batch1.getPostings().get(0)));
+        assertEquals(holdLog.getAffectedAccounts(),
+                client.hold(new PostingPlanChange(planId, reorderedBatch1)).getAffectedAccounts());
+    }
+
+    @Test
+    public void testDuplicateHoldDoesNotWaitForPlanLock() throws Exception {
+        long fromAccountId = client.createAccount(new AccountPrototype("RUB"));
+        long toAccountId = client.createAccount(new AccountPrototype("RUB"));
+        String planId = "duplicate_hold_" + System.currentTimeMillis();
+        PostingBatch batch1 = new PostingBatch(1, asList(
+                new Posting(fromAccountId, toAccountId, 10, "RUB", "1"),
+                new Posting(toAccountId, fromAccountId, 3, "RUB", "2")));
+        PostingPlanLog holdLog = client.hold(new PostingPlanChange(planId, batch1));
+
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement ps = connection.prepareStatement(
+                    "select 1 from shm.plan_log where plan_id = ? for update")) {
+                ps.setString(1, planId);
+                ps.executeQuery().close();
+            }
+            PostingBatch reorderedBatch1 = new PostingBatch(1, asList(batch1.getPostings().get(1),
+                    batch1.getPostings().get(0)));
+            PostingPlanLog duplicateLog = assertTimeoutPreemptively(Duration.ofSeconds(10),
+                    () -> client.hold(new PostingPlanChange(planId, reorderedBatch1)));
+            assertEquals(holdLog.getAffectedAccounts(), duplicateLog.getAffectedAccounts());
+            connection.rollback();
+        }
+    }
+
+    @Test
+    public void testCommitAppliesHeldSummary() throws TException {
+        long fromAccountId = client.createAccount(new AccountPrototype("RUB"));
+        long toAccountId = client.createAccount(new AccountPrototype("RUB"));
+        String planId = "plan_summary_" + System.currentTimeMillis();
+        Posting posting1 = new Posting(fromAccountId, toAccountId, 10, "RUB", "1");
+        Posting posting2 = new Posting(toAccountId, fromAccountId, 3, "RUB", "2");
+        PostingBatch batch1 = new PostingBatch(1, asList(posting1, posting2));
+        PostingBatch batch2 = new PostingBatch(2, asList(new Posting(fromAccountId, toAccountId, 5, "RUB", "3")));
+        client.hold(new PostingPlanChange(planId, batch1));
+        client.hold(new PostingPlanChange(planId, batch2));
+        assertEquals(Long.valueOf(-12L), jdbcTemplate.queryForObject(
+                "select diff from shm.plan_account_diff where plan_id = ? and account_id = ?",
+                Long.class, planId, fromAccountId));
+        assertEquals(Long.valueOf(12L), jdbcTemplate.queryForObject(
+                "select diff from shm.plan_account_diff where plan_id = ? and account_id = ?",
+                Long.class, planId, toAccountId));
+
+        PostingBatch changedBatch2 =
+                new PostingBatch(2, asList(new Posting(fromAccountId, toAccountId, 6, "RUB", "3")));
+        assertThrows(InvalidPostingParams.class,
+                () -> client.commitPlan(new PostingPlan(planId, asList(batch1, changedBatch2))));
+
+        // matched digest doesn't need held postings
+        jdbcTemplate.update("delete from shm.posting_log where plan_id = ?", planId);
+        PostingBatch reorderedBatch1 = new PostingBatch(1, asList(posting2, posting1));
+        PostingPlanLog planLog = client.commitPlan(new PostingPlan(planId, asList(batch2, reorderedBatch1)));
+        assertEquals(-12L, planLog.getAffectedAccounts().get(fromAccountId).getOwnAmount());
+        assertEquals(12L, planLog.getAffectedAccounts().get(toAccountId).getOwnAmount());
+        assertEquals(-12L, client.getAccountByID(fromAccountId).getOwnAmount());
+        assertEquals(12L, client.getAccountByID(toAccountId).getOwnAmount());
+    }
+
+    @Test
+    public void testHoldSignChangeIsReleasedOnCommit() throws TException {
+        long accountA = client.createAccount(new AccountPrototype("RUB"));
+        long accountB = client.createAccount(new AccountPrototype("RUB"));
+        String planId = "sign_change_" + System.currentTimeMillis();
+        PostingBatch batch1 = new PostingBatch(1, asList(new Posting(accountA, accountB, 10, "RUB", "1")));
+        PostingBatch batch2 = new PostingBatch(2, asList(new Posting(accountB, accountA, 15, "RUB", "2")));
+        client.hold(new PostingPlanChange(planId, batch1));
+        PostingPlanLog holdLog = client.hold(new PostingPlanChange(planId, batch2));
+        // held plan nets to A +5, B -5
+        assertEquals(0L, holdLog.getAffectedAccounts().get(accountA).getMinAvailableAmount());
+        assertEquals(5L, holdLog.getAffectedAccounts().get(accountA).getMaxAvailableAmount());
+        assertEquals(-5L, holdLog.getAffectedAccounts().get(accountB).getMinAvailableAmount());
+        assertEquals(0L, holdLog.getAffectedAccounts().get(accountB).getMaxAvailableAmount());
+
+        client.commitPlan(new PostingPlan(planId, asList(batch1, batch2)));
+        Account committedA = client.getAccountByID(accountA);
+        assertEquals(5L, committedA.getOwnAmount());
+        assertEquals(5L, committedA.getMinAvailableAmount());
+        assertEquals(5L, committedA.getMaxAvailableAmount());
+        Account committedB = client.getAccountByID(accountB);
+        assertEquals(-5L, committedB.getOwnAmount());
+        assertEquals(-5L, committedB.getMinAvailableAmount());
+        assertEquals(-5L, committedB.getMaxAvailableAmount());
+    }
+
+    @Test
+    public void testServerSideHoldUntracksPlan() throws TException {
+        long fromAccountId = client.createAccount(new AccountPrototype("RUB"));
+        long toAccountId = client.createAccount(new AccountPrototype("RUB"));
+        String planId = "server_side_hold_" + System.currentTimeMillis();
+        PostingBatch batch1 = new PostingBatch(1, asList(new Posting(fromAccountId, toAccountId, 10, "RUB", "1")));
+        PostingBatch batch2 = new PostingBatch(2, asList(new Posting(fromAccountId, toAccountId, 5, "RUB", "2")));
+        client.hold(new PostingPlanChange(planId, batch1));
+        jdbcTemplate.queryForList("select * from shm.do_posting_operation(?, 'HOLD', 2, now() at time zone 'utc', " +
+                "array[2]::bigint[], array[?]::bigint[], array[?]::bigint[], array[5]::bigint[], " +
+                "array['RUB']::varchar[], array['2']::varchar[])", planId, fromAccountId, toAccountId);
+
+        // plan digest of the first batch is reset, so the commit is validated by held postings
+        assertThrows(InvalidPostingParams.class, () -> client.commitPlan(new PostingPlan(planId, asList(batch1))));
+        PostingPlanLog planLog = client.commitPlan(new PostingPlan(planId, asList(batch1, batch2)));
+        assertEquals(-15L, planLog.getAffectedAccounts().get(fromAccountId).getOwnAmount());
+        assertEquals(Integer.valueOf(0), jdbcTemplate.queryForObject(
+                "select count(*) from shm.plan_account_diff where plan_id = ?", Integer.class, planId));
+        assertEquals(Integer.valueOf(0), jdbcTemplate.queryForObject(
+                "select count(*) from shm.batch_digest where plan_id = ?", Integer.class, planId));
+    }
+}
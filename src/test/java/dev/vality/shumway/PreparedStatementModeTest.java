@@ -0,0 +1,64 @@
+package dev.vality.shumway;
+
+import dev.vality.damsel.accounter.AccountPrototype;
+import dev.vality.damsel.accounter.AccounterSrv;
+import dev.vality.damsel.accounter.Posting;
+import dev.vality.damsel.accounter.PostingBatch;
+import dev.vality.damsel.accounter.PostingPlan;
+import dev.vality.damsel.accounter.PostingPlanChange;
+import dev.vality.damsel.accounter.PostingPlanLog;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+import static java.util.Arrays.asList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@PostgresqlSpringBootITest
+@TestPropertySource(properties = {
+        "db.prepared_statements.mode=server",
+        "db.prepared_statements.threshold=1"
+})
+public class PreparedStatementModeTest {
+
+    @Autowired
+    private AccounterSrv.Iface client;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Test
+    public void testPostingWithServerPreparedStatements() throws Exception {
+        long fromAccountId = client.createAccount(new AccountPrototype("RUB"));
+        long toAccountId = client.createAccount(new AccountPrototype("RUB"));
+        String planId = "prepared_" + System.currentTimeMillis();
+        PostingBatch batch = new PostingBatch(1, asList(new Posting(fromAccountId, toAccountId, 10, "RUB", "Desc")));
+        for (int i = 0; i < 3; i++) {
+            client.hold(new PostingPlanChange(planId, batch));
+        }
+        PostingPlanLog planLog = client.commitPlan(new PostingPlan(planId, asList(batch)));
+        assertEquals(-10L, planLog.getAffectedAccounts().get(fromAccountId).getOwnAmount());
+
+        try (Connection connection = dataSource.getConnection()) {
+            for (int i = 0; i < 2; i++) {
+                try (PreparedStatement statement =
+                             connection.prepareStatement("select count(*) from shm.account where id = ?")) {
+                    statement.setLong(1, fromAccountId);
+                    statement.executeQuery().close();
+                }
+            }
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "select count(*) from pg_prepared_statements where not from_sql");
+                 ResultSet rs = statement.executeQuery()) {
+                rs.next();
+                assertTrue(rs.getLong(1) > 0, "named server-side statements are expected");
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package dev.vality.shumway;
+
+import dev.vality.damsel.accounter.AccountPrototype;
+import dev.vality.damsel.accounter.AccounterSrv;
+import dev.vality.damsel.accounter.Posting;
+import dev.vality.damsel.accounter.PostingBatch;
+import dev.vality.damsel.accounter.PostingPlan;
+import dev.vality.damsel.accounter.PostingPlanChange;
+import dev.vality.geck.common.util.TypeUtil;
+import dev.vality.shumway.dao.impl.RoutingAccountReplicaDao;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.thrift.TException;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+
+import java.time.Instant;
+
+import static java.util.Arrays.asList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Replica points to the same database, which is not in recovery and has no lag.
+ */
+@PostgresqlSpringBootITest
+@TestPropertySource(properties = {
+        "replica.enabled=true",
+        "replica.datasource.url=${spring.datasource.url}",
+        "replica.datasource.username=${spring.datasource.username}",
+        "replica.datasource.password=${spring.datasource.password}"
+})
+public class ReplicaRoutingTest {
+
+    @Autowired
+    private AccounterSrv.Iface client;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    public void testBalanceIsReadFromReplica() throws TException {
+        long fromAccountId = client.createAccount(new AccountPrototype("RUB"));
+        long toAccountId = client.createAccount(new AccountPrototype("RUB"));
+        String planId = "replica_" + System.currentTimeMillis();
+        PostingBatch batch = new PostingBatch(1, asList(new Posting(fromAccountId, toAccountId, 10, "RUB", "Desc")));
+        client.hold(new PostingPlanChange(planId, batch));
+        client.commitPlan(new PostingPlan(planId, asList(batch)));
+
+        String now = TypeUtil.temporalToString(Instant.now().plusSeconds(1));
+        assertEquals(10L, client.getAccountBalance(toAccountId, now));
+        assertEquals(-10L, client.getAccountBalanceDiff(fromAccountId, TypeUtil.temporalToString(Instant.EPOCH), now));
+        assertThrows(TException.class, () -> client.getAccountBalance(Long.MAX_VALUE, now));
+
+        assertTrue(routeCount("replica") >= 2);
+        assertTrue(routeCount("primary") >= 1, "Not found account expected to be looked up on primary");
+    }
+
+    private double routeCount(String target) {
+        return meterRegistry.get(RoutingAccountReplicaDao.ROUTE_METRIC).tag("target", target).counter().count();
+    }
+}
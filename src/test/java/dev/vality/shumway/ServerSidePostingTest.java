@@ -0,0 +1,12 @@
+package dev.vality.shumway;
+
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * Runs the whole accounter scenario suite with server-side posting operation processing.
+ */
+@PostgresqlSpringBootITest
+@TestPropertySource(properties = "posting.server-side.enabled=true")
+public class ServerSidePostingTest extends ShumwayApplicationTests {
+
+}
@@ -1,5 +1,7 @@
 package dev.vality.shumway;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import dev.vality.damsel.accounter.Account;
 import dev.vality.damsel.accounter.AccountNotFound;
 import dev.vality.damsel.accounter.AccountPrototype;
@@ -13,6 +15,8 @@ import dev.vality.damsel.accounter.PostingPlanChange;
 import dev.vality.damsel.accounter.PostingPlanLog;
 import dev.vality.damsel.base.InvalidRequest;
 import dev.vality.geck.common.util.TypeUtil;
+import dev.vality.shumway.dao.AccountLockMode;
+import dev.vality.shumway.dao.impl.AccountLockModeGuard;
 import dev.vality.shumway.handler.AccounterValidator;
 import dev.vality.woody.thrift.impl.http.THSpawnClientBuilder;
 import org.apache.thrift.TException;
@@ -20,16 +24,24 @@ import org.assertj.core.util.Lists;
 import org.hamcrest.Matcher;
 import org.hamcrest.MatcherAssert;
 import org.hamcrest.Matchers;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.web.server.LocalServerPort;
 
 import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
 import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.time.Instant;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -49,6 +61,15 @@ public class ShumwayApplicationTests {
 
     private AccounterSrv.Iface client;
 
+    @Autowired
+    private AccountLockModeGuard lockModeGuard;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
     public static AccounterSrv.Iface createClient(String url) {
         try {
             THSpawnClientBuilder clientBuilder = new THSpawnClientBuilder().withAddress(new URI(url));
@@ -76,6 +97,17 @@ public class ShumwayApplicationTests {
         client = createClient("http://localhost:" + port + "/accounter");
     }
 
+    @BeforeEach
+    public void switchLockMode() {
+        // lock mode is shared through the database by cached contexts of all modes
+        lockModeGuard.switchMode();
+    }
+
+    @AfterEach
+    public void restoreLockMode() {
+        new AccountLockModeGuard(dataSource, AccountLockMode.ROW).switchMode();
+    }
+
     @Test
     public void testCreationTimeSupport() throws TException {
         AccountPrototype prototype = new AccountPrototype("RUB");
@@ -304,6 +336,74 @@ public class ShumwayApplicationTests {
 
     }
 
+    @Test
+    public void testLargeBatchHoldCommitPlan() throws TException {
+        String planId = "large_" + System.currentTimeMillis();
+        long acc1 = client.createAccount(new AccountPrototype("RU"));
+        long acc2 = client.createAccount(new AccountPrototype("RU"));
+
+        int postingCount = 1500;
+        List<Posting> postings = Stream.iterate(1, i -> i + 1)
+                .limit(postingCount)
+                .map(i -> new Posting(acc1, acc2, i, "RU", "Desc " + i))
+                .collect(Collectors.toList());
+        long total = (long) postingCount * (postingCount + 1) / 2;
+        PostingBatch batch = new PostingBatch(1, postings);
+
+        checkPlanLog(() -> client.hold(new PostingPlanChange(planId, batch)), planLog -> {
+            assertEquals(-total, planLog.getAffectedAccounts().get(acc1).getMinAvailableAmount());
+            assertEquals(total, planLog.getAffectedAccounts().get(acc2).getMaxAvailableAmount());
+        });
+        assertEquals(postingCount, client.getPlan(planId).getBatchList().get(0).getPostingsSize());
+
+        checkPlanLog(() -> client.commitPlan(new PostingPlan(planId, asList(batch))), planLog -> {
+            assertEquals(-total, planLog.getAffectedAccounts().get(acc1).getOwnAmount());
+            assertEquals(total, planLog.getAffectedAccounts().get(acc2).getOwnAmount());
+        });
+    }
+
+    @Test
+    public void testBatchAccountBalances() throws Exception {
+        String planId = "balances_" + System.currentTimeMillis();
+        long acc1 = client.createAccount(new AccountPrototype("RU"));
+        long acc2 = client.createAccount(new AccountPrototype("RU"));
+        long acc3 = client.createAccount(new AccountPrototype("RU"));
+        PostingBatch batch = new PostingBatch(1, asList(new Posting(acc1, acc2, 10, "RU", "Desc")));
+        client.hold(new PostingPlanChange(planId, batch));
+        client.commitPlan(new PostingPlan(planId, asList(batch)));
+
+        String from = TypeUtil.temporalToString(Instant.EPOCH);
+        String now = TypeUtil.temporalToString(Instant.now().plusSeconds(1));
+        List<Long> ids = asList(acc1, acc2, acc3, acc1, Long.MAX_VALUE);
+        Map<Long, Long> balances = getBalances(Map.of("ids", ids, "dateTime", now));
+        assertEquals(Map.of(acc1, -10L, acc2, 10L, acc3, 0L), balances);
+        assertEquals(Map.of(acc1, -10L, acc2, 10L, acc3, 0L),
+                getBalances(Map.of("ids", ids, "fromTime", from, "toTime", now)));
+        assertEquals(Map.of(acc1, 0L, acc2, 0L, acc3, 0L),
+                getBalances(Map.of("ids", ids, "fromTime", now, "toTime", now)));
+        assertEquals(client.getAccountBalance(acc1, now), balances.get(acc1));
+        assertEquals(400, postBalances(Map.of("ids", ids)).statusCode());
+        assertEquals(400, postBalances(Map.of("ids", ids, "dateTime", "yesterday")).statusCode());
+        assertEquals(400, postBalances(Map.of("ids", ids, "fromTime", now, "toTime", "2024-13-01T00:00:00Z"))
+                .statusCode());
+    }
+
+    private Map<Long, Long> getBalances(Map<String, Object> request) throws Exception {
+        HttpResponse<String> response = postBalances(request);
+        assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), new TypeReference<Map<Long, Long>>() {
+        });
+    }
+
+    private HttpResponse<String> postBalances(Map<String, Object> request) throws Exception {
+        URI uri = URI.create("http://localhost:" + port + "/accounter/balances");
+        HttpRequest httpRequest = HttpRequest.newBuilder(uri)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(request)))
+                .build();
+        return HttpClient.newHttpClient().send(httpRequest, HttpResponse.BodyHandlers.ofString());
+    }
+
     private PostingBatch up(long amount, long batchId, long acc1, long acc2) {
         Posting posting = new Posting(acc2, acc1, amount, "RU", "Desc");
         return new PostingBatch(batchId, asList(posting));
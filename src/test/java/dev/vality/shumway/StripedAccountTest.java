@@ -0,0 +1,123 @@
+package dev.vality.shumway;
+
+import dev.vality.damsel.accounter.Account;
+import dev.vality.damsel.accounter.AccountPrototype;
+import dev.vality.damsel.accounter.AccounterSrv;
+import dev.vality.damsel.accounter.InvalidPostingParams;
+import dev.vality.damsel.accounter.Posting;
+import dev.vality.damsel.accounter.PostingBatch;
+import dev.vality.damsel.accounter.PostingPlan;
+import dev.vality.damsel.accounter.PostingPlanChange;
+import dev.vality.damsel.accounter.PostingPlanLog;
+import dev.vality.geck.common.util.TypeUtil;
+import org.apache.thrift.TException;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import java.time.Instant;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@PostgresqlSpringBootITest
+@TestPropertySource(properties = "account.striping.enabled=true")
+public class StripedAccountTest {
+
+    private static final int STRIPES = 4;
+    private static final int PLANS = 16;
+
+    @Autowired
+    private AccounterSrv.Iface client;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void testStripedAccountAggregation() throws TException {
+        long systemAccountId = client.createAccount(new AccountPrototype("RUB"));
+        long merchantAccountId = client.createAccount(new AccountPrototype("RUB"));
+        List<Long> stripeIds = jdbcTemplate.queryForList("select * from shm.create_account_stripes(?, ?)",
+                Long.class, systemAccountId, STRIPES);
+        assertEquals(STRIPES - 1, stripeIds.size());
+
+        String planPrefix = "striped_" + System.currentTimeMillis() + "_";
+        for (int i = 0; i < PLANS; i++) {
+            Posting posting = new Posting(systemAccountId, merchantAccountId, 10, "RUB", "Desc");
+            PostingBatch batch = new PostingBatch(1, asList(posting));
+            PostingPlanLog holdLog = client.hold(new PostingPlanChange(planPrefix + i, batch));
+            Account heldAccount = holdLog.getAffectedAccounts().get(systemAccountId);
+            assertEquals(-10L * i, heldAccount.getOwnAmount());
+            assertEquals(-10L * (i + 1), heldAccount.getMinAvailableAmount());
+
+            PostingPlanLog commitLog = client.commitPlan(new PostingPlan(planPrefix + i, asList(batch)));
+            assertEquals(-10L * (i + 1), commitLog.getAffectedAccounts().get(systemAccountId).getOwnAmount());
+        }
+
+        Account systemAccount = client.getAccountByID(systemAccountId);
+        assertEquals(systemAccountId, systemAccount.getId());
+        assertEquals(-10L * PLANS, systemAccount.getOwnAmount());
+        assertEquals(-10L * PLANS, systemAccount.getMinAvailableAmount());
+        assertEquals(-10L * PLANS, systemAccount.getMaxAvailableAmount());
+        assertEquals(10L * PLANS, client.getAccountByID(merchantAccountId).getOwnAmount());
+
+        String now = TypeUtil.temporalToString(Instant.now().plusSeconds(1));
+        assertEquals(-10L * PLANS, client.getAccountBalance(systemAccountId, now));
+        assertEquals(-10L * PLANS,
+                client.getAccountBalanceDiff(systemAccountId, TypeUtil.temporalToString(Instant.EPOCH), now));
+
+        Long usedStripes = jdbcTemplate.queryForObject(
+                "select count(distinct l.account_id) from shm.account_log l " +
+                        "join shm.account a on a.id = l.account_id where a.id = ? or a.parent_id = ?",
+                Long.class, systemAccountId, systemAccountId);
+        assertTrue(usedStripes > 1, "Plans expected to be spread across stripes");
+    }
+
+    @Test
+    public void testStripeReferenceIsRejected() throws TException {
+        long systemAccountId = client.createAccount(new AccountPrototype("RUB"));
+        long merchantAccountId = client.createAccount(new AccountPrototype("RUB"));
+        List<Long> stripeIds = jdbcTemplate.queryForList("select * from shm.create_account_stripes(?, ?)",
+                Long.class, systemAccountId, STRIPES);
+
+        String planId = "striped_direct_" + System.currentTimeMillis();
+        for (Long stripeId : stripeIds) {
+            assertThrows(InvalidPostingParams.class, () -> client.hold(new PostingPlanChange(planId,
+                    new PostingBatch(1, asList(new Posting(stripeId, merchantAccountId, 10, "RUB", "Desc"))))));
+        }
+        assertThrows(InvalidPostingParams.class, () -> client.hold(new PostingPlanChange(planId,
+                new PostingBatch(1, asList(new Posting(systemAccountId, merchantAccountId, 10, "RUB", "Desc"),
+                        new Posting(merchantAccountId, stripeIds.get(0), 10, "RUB", "Desc"))))));
+    }
+
+    @Test
+    public void testPlanHeldBeforeStripingStaysOnItsStripe() throws TException {
+        long systemAccountId = client.createAccount(new AccountPrototype("RUB"));
+        long merchantAccountId = client.createAccount(new AccountPrototype("RUB"));
+        String planId = "striped_later_" + System.currentTimeMillis();
+        // plan id, which is routed to another stripe than the account itself
+        for (int i = 0; Math.floorMod(planId.hashCode(), STRIPES) == 0; i++) {
+            planId = "striped_later_" + System.currentTimeMillis() + "_" + i;
+        }
+        PostingBatch batch = new PostingBatch(1,
+                asList(new Posting(systemAccountId, merchantAccountId, 10, "RUB", "Desc")));
+        client.hold(new PostingPlanChange(planId, batch));
+        jdbcTemplate.queryForList("select * from shm.create_account_stripes(?, ?)",
+                Long.class, systemAccountId, STRIPES);
+
+        PostingPlanLog commitLog = client.commitPlan(new PostingPlan(planId, asList(batch)));
+        assertEquals(-10L, commitLog.getAffectedAccounts().get(systemAccountId).getOwnAmount());
+        Account systemAccount = client.getAccountByID(systemAccountId);
+        assertEquals(-10L, systemAccount.getOwnAmount());
+        assertEquals(-10L, systemAccount.getMinAvailableAmount());
+        assertEquals(-10L, systemAccount.getMaxAvailableAmount());
+        assertEquals(List.of(systemAccountId), jdbcTemplate.queryForList(
+                "select distinct l.account_id from shm.account_log l join shm.account a on a.id = l.account_id " +
+                        "where l.plan_id = ? and (a.id = ? or a.parent_id = ?)",
+                Long.class, planId, systemAccountId, systemAccountId));
+    }
+}
@@ -0,0 +1,74 @@
+package dev.vality.shumway.handler;
+
+import dev.vality.damsel.accounter.Posting;
+import dev.vality.shumway.domain.PostingLog;
+import dev.vality.shumway.domain.PostingOperation;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AccounterValidatorTest {
+
+    @Test
+    public void testSavedPostingsMatchInAnyOrder() {
+        Map<Posting, String> errors = AccounterValidator.compareToSavedPostings(
+                Map.of(1L, List.of(new Posting(2, 1, 5, "RUB", "b"), new Posting(1, 2, 5, "RUB", "a"))),
+                Map.of(1L, List.of(postingLog(1, 2, 5, "a"), postingLog(2, 1, 5, "b"))),
+                true
+        );
+
+        assertTrue(errors.isEmpty());
+    }
+
+    @Test
+    public void testSavedPostingsMatchWithMultiplicity() {
+        Posting posting = new Posting(1, 2, 5, "RUB", "a");
+        Map<Posting, String> errors = AccounterValidator.compareToSavedPostings(
+                Map.of(1L, List.of(posting)),
+                Map.of(1L, List.of(postingLog(1, 2, 5, "a"), postingLog(1, 2, 5, "a"))),
+                true
+        );
+
+        assertEquals(Map.of(posting, String.format(AccounterValidator.SAVED_POSTING_NOT_FOUND_ERR, 1L)), errors);
+    }
+
+    @Test
+    public void testReceivedPostingNotFound() {
+        Posting posting = new Posting(1, 2, 6, "RUB", "a");
+        Map<Posting, String> errors = AccounterValidator.compareToSavedPostings(
+                Map.of(1L, List.of(posting)),
+                Map.of(1L, List.of(postingLog(1, 2, 5, "a"))),
+                true
+        );
+
+        assertEquals(String.format(AccounterValidator.RECEIVED_POSTING_NOT_FOUND_ERR, 1L), errors.get(posting));
+        assertEquals(2, errors.size());
+    }
+
+    @Test
+    public void testSavedDigestsMatch() {
+        byte[] digest1 = {1};
+        byte[] digest2 = {2};
+        Map<Long, byte[]> saved = Map.of(1L, digest1, 2L, digest2);
+
+        assertTrue(AccounterValidator.matchesSavedDigests(Map.of(2L, new byte[] {2}), saved, false));
+        assertTrue(AccounterValidator.matchesSavedDigests(Map.of(3L, digest1), saved, false));
+        assertTrue(AccounterValidator.matchesSavedDigests(Map.of(1L, digest1, 2L, digest2), saved, true));
+        assertFalse(AccounterValidator.matchesSavedDigests(Map.of(2L, digest1), saved, false));
+        assertFalse(AccounterValidator.matchesSavedDigests(Map.of(0L, digest1), saved, false));
+        assertFalse(AccounterValidator.matchesSavedDigests(Map.of(1L, digest1), saved, true));
+        assertFalse(AccounterValidator.matchesSavedDigests(Map.of(1L, digest1, 2L, digest2, 3L, digest2), saved,
+                true));
+    }
+
+    private static PostingLog postingLog(long fromId, long toId, long amount, String description) {
+        return new PostingLog(0, "plan", 1, fromId, toId, amount, Instant.now(), PostingOperation.HOLD, "RUB",
+                description);
+    }
+}
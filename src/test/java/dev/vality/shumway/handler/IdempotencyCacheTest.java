@@ -0,0 +1,98 @@
+package dev.vality.shumway.handler;
+
+import dev.vality.damsel.accounter.Account;
+import dev.vality.damsel.accounter.Posting;
+import dev.vality.damsel.accounter.PostingBatch;
+import dev.vality.damsel.accounter.PostingPlan;
+import dev.vality.damsel.accounter.PostingPlanLog;
+import dev.vality.shumway.domain.PostingOperation;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class IdempotencyCacheTest {
+    private static final String PLAN_ID = "plan";
+
+    private final IdempotencyCache cache = new IdempotencyCache(100, Duration.ofMinutes(1), new SimpleMeterRegistry());
+
+    @Test
+    public void testHoldsAreNotCached() {
+        PostingPlan hold = plan(batch(1, 10));
+        cache.put(hold, PostingOperation.HOLD, result(10));
+
+        assertNull(cache.get(hold, PostingOperation.HOLD));
+        assertNull(cache.get(hold, PostingOperation.COMMIT));
+    }
+
+    @Test
+    public void testDuplicateFinalOperation() {
+        PostingPlan commit = plan(batch(1, 10), batch(2, 5));
+        cache.put(commit, PostingOperation.COMMIT, result(15));
+
+        assertEquals(result(15), cache.get(commit, PostingOperation.COMMIT));
+        assertNull(cache.get(commit, PostingOperation.ROLLBACK));
+        assertNull(cache.get(plan(batch(1, 10), batch(2, 6)), PostingOperation.COMMIT));
+        assertNull(cache.get(plan(batch(1, 10)), PostingOperation.HOLD));
+    }
+
+    @Test
+    public void testResultIsCopied() {
+        PostingPlan commit = plan(batch(1, 10));
+        PostingPlanLog result = result(10);
+        cache.put(commit, PostingOperation.COMMIT, result);
+        result.getAffectedAccounts().get(1L).setOwnAmount(0);
+
+        PostingPlanLog cached = cache.get(commit, PostingOperation.COMMIT);
+        assertEquals(result(10), cached);
+        assertNotSame(cached, cache.get(commit, PostingOperation.COMMIT));
+    }
+
+    @Test
+    public void testReorderedDuplicate() {
+        Posting posting1 = new Posting(1, 2, 10, "RUB", "Desc1");
+        Posting posting2 = new Posting(2, 1, 5, "RUB", "Desc2");
+        cache.put(plan(new PostingBatch(1, List.of(posting1, posting2)), batch(2, 5)), PostingOperation.COMMIT,
+                result(15));
+
+        assertEquals(result(15), cache.get(plan(batch(2, 5), new PostingBatch(1, List.of(posting2, posting1))),
+                PostingOperation.COMMIT));
+        assertNull(cache.get(plan(batch(2, 6), batch(2, 5), new PostingBatch(1, List.of(posting1, posting2))),
+                PostingOperation.COMMIT));
+    }
+
+    @Test
+    public void testDigest() {
+        assertEquals(IdempotencyCache.digest(plan(batch(1, 10))), IdempotencyCache.digest(plan(batch(1, 10))));
+        assertNotEquals(IdempotencyCache.digest(plan(batch(1, 10))), IdempotencyCache.digest(plan(batch(2, 10))));
+        assertNotEquals(IdempotencyCache.digest(plan(batch(1, 10))),
+                IdempotencyCache.digest(plan(new PostingBatch(1, List.of(new Posting(1, 2, 10, "RUB", "Desc2"))))));
+    }
+
+    @Test
+    public void testDisabled() {
+        IdempotencyCache disabled = IdempotencyCache.disabled();
+        PostingPlan commit = plan(batch(1, 10));
+        disabled.put(commit, PostingOperation.COMMIT, result(10));
+        assertNull(disabled.get(commit, PostingOperation.COMMIT));
+    }
+
+    private static PostingPlan plan(PostingBatch... batches) {
+        return new PostingPlan(PLAN_ID, List.of(batches));
+    }
+
+    private static PostingBatch batch(long id, long amount) {
+        return new PostingBatch(id, List.of(new Posting(1, 2, amount, "RUB", "Desc")));
+    }
+
+    private static PostingPlanLog result(long ownAmount) {
+        return new PostingPlanLog(Map.of(1L, new Account(1, ownAmount, ownAmount, ownAmount, "RUB")));
+    }
+}
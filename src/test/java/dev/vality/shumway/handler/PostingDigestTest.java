@@ -0,0 +1,48 @@
+package dev.vality.shumway.handler;
+
+import dev.vality.damsel.accounter.Posting;
+import dev.vality.damsel.accounter.PostingBatch;
+import dev.vality.damsel.accounter.PostingPlan;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+public class PostingDigestTest {
+    private static final Posting POSTING_1 = new Posting(1, 2, 10, "RUB", "1");
+    private static final Posting POSTING_2 = new Posting(2, 3, 5, "RUB", "2");
+
+    @Test
+    public void testBatchDigestIgnoresPostingOrder() {
+        assertArrayEquals(
+                PostingDigest.batch(new PostingBatch(1, List.of(POSTING_1, POSTING_2))),
+                PostingDigest.batch(new PostingBatch(1, List.of(POSTING_2, POSTING_1))));
+    }
+
+    @Test
+    public void testBatchDigestDiffers() {
+        byte[] digest = PostingDigest.batch(new PostingBatch(1, List.of(POSTING_1, POSTING_2)));
+        assertFalse(Arrays.equals(digest, PostingDigest.batch(new PostingBatch(2, List.of(POSTING_1, POSTING_2)))));
+        assertFalse(Arrays.equals(digest, PostingDigest.batch(new PostingBatch(1, List.of(POSTING_1)))));
+        assertFalse(Arrays.equals(digest, PostingDigest.batch(new PostingBatch(1, List.of(POSTING_1, POSTING_1)))));
+        assertFalse(Arrays.equals(digest, PostingDigest.batch(new PostingBatch(1, List.of(POSTING_1,
+                new Posting(2, 3, 5, "RUB", null))))));
+        assertFalse(Arrays.equals(digest, PostingDigest.batch(new PostingBatch(1, List.of(POSTING_1,
+                new Posting(2, 3, 6, "RUB", "2"))))));
+    }
+
+    @Test
+    public void testPlanDigestChainsBatchesInIdOrder() {
+        PostingBatch batch1 = new PostingBatch(1, List.of(POSTING_1));
+        PostingBatch batch2 = new PostingBatch(2, List.of(POSTING_2));
+        byte[] heldDigest = PostingDigest.chain(PostingDigest.chain(new byte[0], PostingDigest.batch(batch1)),
+                PostingDigest.batch(batch2));
+
+        assertArrayEquals(heldDigest, PostingDigest.plan(new PostingPlan("plan", List.of(batch1, batch2))));
+        assertArrayEquals(heldDigest, PostingDigest.plan(new PostingPlan("plan", List.of(batch2, batch1))));
+        assertFalse(Arrays.equals(heldDigest, PostingDigest.plan(new PostingPlan("plan", List.of(batch1)))));
+    }
+}
@@ -0,0 +1,34 @@
+package dev.vality.shumway.handler;
+
+import dev.vality.shumway.domain.PostingOperation;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class PostingMetricsTest {
+
+    @Test
+    public void testPhasesArePublishedWithRequestType() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        PostingMetrics metrics = new PostingMetrics(meterRegistry);
+
+        PostingMetrics.Phases phases = metrics.start(PostingOperation.HOLD);
+        long start = phases.begin();
+        phases.end(PostingMetrics.Phase.ACCOUNT_LOCK, start);
+        start = phases.begin();
+        phases.end(PostingMetrics.Phase.ACCOUNT_LOCK, start);
+        phases.setDuplicate(true);
+        phases.publish();
+
+        Timer timer = meterRegistry.find(PostingMetrics.PHASE_METRIC)
+                .tags("phase", "account_lock", "operation", "HOLD", "request", "duplicate")
+                .timer();
+        assertNotNull(timer);
+        assertEquals(1, timer.count());
+        assertNull(meterRegistry.find(PostingMetrics.PHASE_METRIC).tag("phase", "posting_insert").timer());
+    }
+}
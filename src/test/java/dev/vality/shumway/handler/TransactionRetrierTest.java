@@ -0,0 +1,85 @@
+package dev.vality.shumway.handler;
+
+import dev.vality.shumway.dao.AccountStateConflictException;
+import dev.vality.shumway.dao.DaoException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DeadlockLoserDataAccessException;
+
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TransactionRetrierTest {
+
+    @Test
+    public void testRetryOnDeadlock() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        TransactionRetrier retrier = new TransactionRetrier(3, 1, 5, meterRegistry);
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = retrier.execute(() -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw deadlock();
+            }
+            return "ok";
+        });
+
+        assertEquals("ok", result);
+        assertEquals(3, attempts.get());
+        assertEquals(2.0, meterRegistry.get(TransactionRetrier.RETRY_METRIC).tag("reason", "deadlock")
+                .counter().count());
+    }
+
+    @Test
+    public void testRetryExhausted() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        TransactionRetrier retrier = new TransactionRetrier(2, 1, 5, meterRegistry);
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(DaoException.class, () -> retrier.execute(() -> {
+            attempts.incrementAndGet();
+            throw deadlock();
+        }));
+        assertEquals(2, attempts.get());
+        assertEquals(1.0, meterRegistry.get(TransactionRetrier.RETRY_EXHAUSTED_METRIC).tag("reason", "deadlock")
+                .counter().count());
+    }
+
+    @Test
+    public void testRetryOnAccountStateConflict() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        TransactionRetrier retrier = new TransactionRetrier(3, 1, 5, meterRegistry);
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertEquals(Integer.valueOf(2), retrier.execute(() -> {
+            if (attempts.incrementAndGet() < 2) {
+                throw new AccountStateConflictException(1);
+            }
+            return attempts.get();
+        }));
+        assertEquals(1.0, meterRegistry.get(TransactionRetrier.RETRY_METRIC)
+                .tag("reason", TransactionRetrier.ACCOUNT_STATE_CONFLICT).counter().count());
+    }
+
+    @Test
+    public void testNoRetryOnOtherErrors() {
+        TransactionRetrier retrier = new TransactionRetrier(3, 1, 5, new SimpleMeterRegistry());
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(DaoException.class, () -> retrier.execute(() -> {
+            attempts.incrementAndGet();
+            throw new DaoException(new SQLException("unique violation", "23505"));
+        }));
+        assertEquals(1, attempts.get());
+        assertNull(TransactionRetrier.getRetryReason(new RuntimeException()));
+    }
+
+    private static DaoException deadlock() {
+        return new DaoException(new DeadlockLoserDataAccessException("deadlock",
+                new SQLException("deadlock detected", "40P01")));
+    }
+}
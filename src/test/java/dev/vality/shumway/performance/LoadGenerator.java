@@ -0,0 +1,285 @@
+package dev.vality.shumway.performance;
+
+import dev.vality.damsel.accounter.AccountPrototype;
+import dev.vality.damsel.accounter.AccounterSrv;
+import dev.vality.damsel.accounter.Posting;
+import dev.vality.damsel.accounter.PostingBatch;
+import dev.vality.damsel.accounter.PostingPlan;
+import dev.vality.damsel.accounter.PostingPlanChange;
+import dev.vality.woody.thrift.impl.http.THSpawnClientBuilder;
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.apache.thrift.TException;
+
+import java.io.PrintStream;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open loop load generator: starts hold -> commit/rollback flows through the thrift client at a fixed rate,
+ * independently of response times, and records per operation latency histograms.
+ * Flow latency is measured from the intended start time, so queueing behind slow flows is not hidden
+ * (coordinated omission). Plans are generated from the seed, so runs with the same settings are reproducible.
+ * <p>
+ * Runs against a started service, settings are read from system properties (see {@link #main}):
+ * <pre>
+ * java -cp ... -Dload.url=http://localhost:8022/accounter -Dload.rate=500 -Dload.hot_share=0.8 \
+ *     dev.vality.shumway.performance.LoadGenerator
+ * </pre>
+ */
+@Slf4j
+@Builder
+public class LoadGenerator {
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(5);
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private final AccounterSrv.Iface client;
+    @Builder.Default
+    private final int accounts = 1000;
+    // accounts, which get hotShare of all postings, e.g. system and provider accounts
+    @Builder.Default
+    private final int hotAccounts = 10;
+    @Builder.Default
+    private final double hotShare = 0.5;
+    @Builder.Default
+    private final int batchesPerPlan = 1;
+    @Builder.Default
+    private final int postingsPerBatch = 3;
+    @Builder.Default
+    private final double rollbackShare = 0.1;
+    @Builder.Default
+    private final int ratePerSec = 100;
+    @Builder.Default
+    private final Duration warmup = Duration.ofSeconds(10);
+    @Builder.Default
+    private final Duration duration = Duration.ofMinutes(1);
+    @Builder.Default
+    private final int threads = 64;
+    @Builder.Default
+    private final long seed = 42;
+
+    public static void main(String[] args) throws Exception {
+        AccounterSrv.Iface client = new THSpawnClientBuilder()
+                .withAddress(new URI(System.getProperty("load.url", "http://localhost:8022/accounter")))
+                .build(AccounterSrv.Iface.class);
+        LoadGenerator generator = LoadGenerator.builder()
+                .client(client)
+                .accounts(Integer.getInteger("load.accounts", 1000))
+                .hotAccounts(Integer.getInteger("load.hot_accounts", 10))
+                .hotShare(Double.parseDouble(System.getProperty("load.hot_share", "0.5")))
+                .batchesPerPlan(Integer.getInteger("load.batches_per_plan", 1))
+                .postingsPerBatch(Integer.getInteger("load.postings_per_batch", 3))
+                .rollbackShare(Double.parseDouble(System.getProperty("load.rollback_share", "0.1")))
+                .ratePerSec(Integer.getInteger("load.rate", 100))
+                .warmup(Duration.ofSeconds(Long.getLong("load.warmup_sec", 10)))
+                .duration(Duration.ofSeconds(Long.getLong("load.duration_sec", 60)))
+                .threads(Integer.getInteger("load.threads", 64))
+                .seed(Long.getLong("load.seed", 42))
+                .build();
+        generator.run().print(System.out);
+    }
+
+    public Result run() throws TException, InterruptedException {
+        List<Long> accountIds = createAccounts();
+        Map<Operation, Recorder> recorders = new EnumMap<>(Operation.class);
+        Map<Operation, AtomicLong> errors = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            recorders.put(operation, new Recorder(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS));
+            errors.put(operation, new AtomicLong());
+        }
+
+        Random random = new Random(seed);
+        String runId = Long.toString(System.currentTimeMillis());
+        long periodNanos = TimeUnit.SECONDS.toNanos(1) / ratePerSec;
+        // unbounded queue, the generator must never wait for the service
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long startTime = System.nanoTime();
+        long warmupEndTime = startTime + warmup.toNanos();
+        long endTime = warmupEndTime + duration.toNanos();
+        log.info("Load started, accounts: {}, rate: {}/s, warmup: {}, duration: {}",
+                accountIds.size(), ratePerSec, warmup, duration);
+        for (long i = 0; ; i++) {
+            long intendedStartTime = startTime + i * periodNanos;
+            if (intendedStartTime >= endTime) {
+                break;
+            }
+            PostingPlan plan = createPlan(runId + "_" + i, accountIds, random);
+            boolean rollback = random.nextDouble() < rollbackShare;
+            Flow flow = new Flow(plan, rollback, intendedStartTime, intendedStartTime >= warmupEndTime,
+                    recorders, errors);
+            long delay = intendedStartTime - System.nanoTime();
+            if (delay > 0) {
+                LockSupport.parkNanos(delay);
+            }
+            executor.execute(flow);
+        }
+        executor.shutdown();
+        if (!executor.awaitTermination(HIGHEST_TRACKABLE_MICROS, TimeUnit.MICROSECONDS)) {
+            log.error("Waiting for flows was terminated by timeout");
+            executor.shutdownNow();
+        }
+
+        Map<Operation, Histogram> histograms = new EnumMap<>(Operation.class);
+        Map<Operation, Long> errorCounts = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            histograms.put(operation, recorders.get(operation).getIntervalHistogram());
+            errorCounts.put(operation, errors.get(operation).get());
+        }
+        return new Result(histograms, errorCounts, duration);
+    }
+
+    private List<Long> createAccounts() throws TException {
+        List<Long> accountIds = new ArrayList<>(accounts);
+        AccountPrototype prototype = new AccountPrototype("RUB");
+        prototype.setDescription("Load");
+        for (int i = 0; i < accounts; i++) {
+            accountIds.add(client.createAccount(prototype));
+        }
+        return accountIds;
+    }
+
+    private PostingPlan createPlan(String planId, List<Long> accountIds, Random random) {
+        List<PostingBatch> batches = new ArrayList<>(batchesPerPlan);
+        for (int batchId = 1; batchId <= batchesPerPlan; batchId++) {
+            List<Posting> postings = new ArrayList<>(postingsPerBatch);
+            for (int i = 0; i < postingsPerBatch; i++) {
+                long fromId = pickAccount(accountIds, random);
+                long toId;
+                do {
+                    toId = pickAccount(accountIds, random);
+                } while (toId == fromId);
+                postings.add(new Posting(fromId, toId, random.nextInt(1000) + 1, "RUB", "Load"));
+            }
+            batches.add(new PostingBatch(batchId, postings));
+        }
+        return new PostingPlan(planId, batches);
+    }
+
+    private long pickAccount(List<Long> accountIds, Random random) {
+        int hot = Math.min(hotAccounts, accountIds.size());
+        if (hot > 0 && (hot == accountIds.size() || random.nextDouble() < hotShare)) {
+            return accountIds.get(random.nextInt(hot));
+        }
+        return accountIds.get(hot + random.nextInt(accountIds.size() - hot));
+    }
+
+    public enum Operation {
+        HOLD, COMMIT, ROLLBACK, FLOW
+    }
+
+    private class Flow implements Runnable {
+        private final PostingPlan plan;
+        private final boolean rollback;
+        private final long intendedStartTime;
+        private final boolean measured;
+        private final Map<Operation, Recorder> recorders;
+        private final Map<Operation, AtomicLong> errors;
+
+        Flow(PostingPlan plan, boolean rollback, long intendedStartTime, boolean measured,
+             Map<Operation, Recorder> recorders, Map<Operation, AtomicLong> errors) {
+            this.plan = plan;
+            this.rollback = rollback;
+            this.intendedStartTime = intendedStartTime;
+            this.measured = measured;
+            this.recorders = recorders;
+            this.errors = errors;
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (PostingBatch batch : plan.getBatchList()) {
+                    long holdStartTime = System.nanoTime();
+                    client.hold(new PostingPlanChange(plan.getId(), batch));
+                    record(Operation.HOLD, holdStartTime);
+                }
+            } catch (Exception e) {
+                fail(Operation.HOLD, e);
+                return;
+            }
+            Operation finalOperation = rollback ? Operation.ROLLBACK : Operation.COMMIT;
+            try {
+                long finalStartTime = System.nanoTime();
+                if (rollback) {
+                    client.rollbackPlan(plan);
+                } else {
+                    client.commitPlan(plan);
+                }
+                record(finalOperation, finalStartTime);
+                record(Operation.FLOW, intendedStartTime);
+            } catch (Exception e) {
+                fail(finalOperation, e);
+            }
+        }
+
+        private void record(Operation operation, long startTime) {
+            if (measured) {
+                long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startTime);
+                recorders.get(operation).recordValue(Math.min(micros, HIGHEST_TRACKABLE_MICROS));
+            }
+        }
+
+        private void fail(Operation operation, Exception e) {
+            log.warn("Failed to {} plan: {}", operation, plan.getId(), e);
+            if (measured) {
+                errors.get(operation).incrementAndGet();
+                errors.get(Operation.FLOW).incrementAndGet();
+            }
+        }
+    }
+
+    public static class Result {
+        private final Map<Operation, Histogram> histograms;
+        private final Map<Operation, Long> errors;
+        private final Duration duration;
+
+        public Result(Map<Operation, Histogram> histograms, Map<Operation, Long> errors, Duration duration) {
+            this.histograms = histograms;
+            this.errors = errors;
+            this.duration = duration;
+        }
+
+        public Histogram getHistogram(Operation operation) {
+            return histograms.get(operation);
+        }
+
+        public long getErrors(Operation operation) {
+            return errors.get(operation);
+        }
+
+        public void print(PrintStream out) {
+            double seconds = Math.max(duration.toMillis(), 1) / 1000.0;
+            out.printf("%-9s %8s %7s %8s %8s %8s %8s %8s %8s %8s%n",
+                    "operation", "count", "errors", "rate/s", "p50,ms", "p90,ms", "p99,ms", "p99.9,ms", "max,ms",
+                    "mean,ms");
+            for (Operation operation : Operation.values()) {
+                Histogram histogram = histograms.get(operation);
+                out.printf("%-9s %8d %7d %8.1f %8.2f %8.2f %8.2f %8.2f %8.2f %8.2f%n",
+                        operation, histogram.getTotalCount(), errors.get(operation),
+                        histogram.getTotalCount() / seconds,
+                        toMillis(histogram.getValueAtPercentile(50)),
+                        toMillis(histogram.getValueAtPercentile(90)),
+                        toMillis(histogram.getValueAtPercentile(99)),
+                        toMillis(histogram.getValueAtPercentile(99.9)),
+                        toMillis(histogram.getMaxValue()),
+                        histogram.getMean() / 1000);
+            }
+        }
+
+        private static double toMillis(long micros) {
+            return micros / 1000.0;
+        }
+    }
+}
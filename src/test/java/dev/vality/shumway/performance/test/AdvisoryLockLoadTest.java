@@ -0,0 +1,15 @@
+package dev.vality.shumway.performance.test;
+
+import dev.vality.shumway.PostgresqlSpringBootITest;
+import org.junit.jupiter.api.Disabled;
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * {@link LoadTest} with advisory account locks, compared with the default row locks.
+ */
+@Disabled
+@PostgresqlSpringBootITest
+@TestPropertySource(properties = {"account.locking.mode=advisory", "account.locking.switch_on_startup=true"})
+public class AdvisoryLockLoadTest extends LoadTest {
+
+}
@@ -0,0 +1,71 @@
+package dev.vality.shumway.performance.test;
+
+import dev.vality.shumway.PostgresqlSpringBootITest;
+import dev.vality.shumway.ShumwayApplicationTests;
+import dev.vality.shumway.dao.AccountLockMode;
+import dev.vality.shumway.dao.impl.AccountLockModeGuard;
+import dev.vality.shumway.performance.LoadGenerator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+/**
+ * Runs {@link LoadGenerator} against the service started on the test postgres container.
+ * Subclasses run it with other settings to compare the results.
+ */
+@Disabled
+@PostgresqlSpringBootITest
+public class LoadTest {
+
+    // multixacts, created by concurrent account row lockers
+    private static final String MULTIXACT_AGE_SQL =
+            "select mxid_age(datminmxid) from pg_database where datname = current_database()";
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private AccountLockModeGuard lockModeGuard;
+
+    @BeforeEach
+    public void switchLockMode() {
+        lockModeGuard.switchMode();
+    }
+
+    @AfterEach
+    public void restoreLockMode() {
+        new AccountLockModeGuard(dataSource, AccountLockMode.ROW).switchMode();
+    }
+
+    @Test
+    public void testHotAccounts() throws Exception {
+        Integer multixactAge = jdbcTemplate.queryForObject(MULTIXACT_AGE_SQL, Integer.class);
+        LoadGenerator.builder()
+                .client(ShumwayApplicationTests.createClient("http://localhost:" + port + "/accounter"))
+                .accounts(1000)
+                .hotAccounts(5)
+                .hotShare(0.8)
+                .postingsPerBatch(3)
+                .ratePerSec(200)
+                .warmup(Duration.ofSeconds(10))
+                .duration(Duration.ofSeconds(60))
+                .build()
+                .run()
+                .print(System.out);
+        System.out.printf("multixacts created: %d%n",
+                jdbcTemplate.queryForObject(MULTIXACT_AGE_SQL, Integer.class) - multixactAge);
+    }
+}
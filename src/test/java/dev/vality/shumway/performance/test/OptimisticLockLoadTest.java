@@ -0,0 +1,20 @@
+package dev.vality.shumway.performance.test;
+
+import dev.vality.shumway.PostgresqlSpringBootITest;
+import org.junit.jupiter.api.Disabled;
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * {@link LoadTest} with optimistic account state versions, compared with row and advisory locks.
+ * Conflicts are reported by shumway.transaction.retry metric with account_state_conflict reason.
+ */
+@Disabled
+@PostgresqlSpringBootITest
+@TestPropertySource(properties = {
+        "account.locking.mode=optimistic",
+        "account.locking.switch_on_startup=true",
+        "account.locking.optimistic_enabled=true"
+})
+public class OptimisticLockLoadTest extends LoadTest {
+
+}
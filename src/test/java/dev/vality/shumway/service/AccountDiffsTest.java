@@ -0,0 +1,54 @@
+package dev.vality.shumway.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AccountDiffsTest {
+
+    @Test
+    public void testAccumulateInInsertionOrder() {
+        AccountDiffs diffs = new AccountDiffs();
+        diffs.add(3, 10);
+        diffs.add(1, -5);
+        diffs.add(3, -4);
+
+        assertEquals(2, diffs.size());
+        assertEquals(3, diffs.accountIdAt(0));
+        assertEquals(6, diffs.diffAt(0));
+        assertEquals(1, diffs.accountIdAt(1));
+        assertEquals(-5, diffs.diffAt(1));
+        assertTrue(diffs.contains(1));
+        assertFalse(diffs.contains(2));
+        assertEquals(0, diffs.get(2));
+
+        diffs.clear();
+        assertEquals(0, diffs.size());
+        assertFalse(diffs.contains(3));
+    }
+
+    @Test
+    public void testMatchesBoxedMapOnGrowth() {
+        Random random = new Random(42);
+        AccountDiffs diffs = new AccountDiffs(1);
+        Map<Long, Long> expected = new HashMap<>();
+        for (int i = 0; i < 10_000; i++) {
+            long accountId = random.nextInt(3_000) * 1024L;
+            long diff = random.nextInt(1_000) - 500;
+            diffs.add(accountId, diff);
+            expected.merge(accountId, diff, Long::sum);
+        }
+
+        assertEquals(expected.size(), diffs.size());
+        for (int i = 0; i < diffs.size(); i++) {
+            assertEquals(expected.get(diffs.accountIdAt(i)), diffs.diffAt(i));
+        }
+        expected.forEach((accountId, diff) -> assertEquals(diff, diffs.get(accountId)));
+    }
+}